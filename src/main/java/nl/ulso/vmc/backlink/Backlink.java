@@ -1,9 +1,25 @@
 package nl.ulso.vmc.backlink;
 
+import nl.ulso.curator.vault.Document;
+
 /// Represents a backlink.
 ///
 /// Seen as a link, it is a reference from the source document to the target document. By collecting
 /// all links for a target document, we have its *back*links.
-record Backlink(String targetDocumentName, String sourceDocumentName)
+///
+/// Next to the two document names, a backlink holds some metadata on the source document, used to
+/// rank backlinks: the number of links from the source document to the target document, and the
+/// time the source document was last modified.
+record Backlink(
+    String targetDocumentName, String sourceDocumentName, int linkCount, long sourceLastModified)
 {
+    static Backlink newBacklink(String targetDocumentName, Document sourceDocument, int linkCount)
+    {
+        return new Backlink(
+            targetDocumentName,
+            sourceDocument.name(),
+            linkCount,
+            sourceDocument.lastModified()
+        );
+    }
 }
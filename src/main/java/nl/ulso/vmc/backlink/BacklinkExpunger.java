@@ -52,8 +52,8 @@ final class BacklinkExpunger
         var backlinkDocumentName = reference.backlinkDocumentName();
         if (!backlinkQueryReferenceRepository.hasBacklinkReference(backlinkDocumentName))
         {
-            backlinkRepository.backlinksFor(backlinkDocumentName).forEach(link ->
-                collector.delete(new Backlink(backlinkDocumentName, link), Backlink.class));
+            backlinkRepository.backlinksFor(backlinkDocumentName).forEach(backlink ->
+                collector.delete(backlink, Backlink.class));
         }
     }
 }
@@ -2,10 +2,10 @@ package nl.ulso.vmc.backlink;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import nl.ulso.curator.change.ChangeCollector;
-import nl.ulso.curator.change.EntityProcessor;
-import nl.ulso.curator.vault.*;
+import nl.ulso.curator.change.*;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 /// Produces backlinks for all documents in the vault whenever a query reference to a previously
@@ -14,8 +14,14 @@ import java.util.Set;
 /// This processor is executed *before* the [BacklinkQueryReferenceRepository] is updated. That
 /// means that when a new [BacklinkQueryReference] comes in and the repository has no references to
 /// the backlink document name yet, it concerns a completely new reference. In that case all links
-/// to the document are looked up across the vault, and [Backlink]s are created for every instance,
-/// at most one per document.
+/// to the document are looked up in the [LinkRepository], and [Backlink]s are created for every
+/// instance, at most one per document.
+///
+/// A single changelog, like the one for the initial load of the vault, can hold many references to
+/// the same untracked document. Since the repository is updated only afterward, each of these
+/// references looks new. The changes produced by this processor are therefore collected in a set,
+/// so that every [Backlink] is sent down the pipeline only once, no matter how many references
+/// asked for it.
 ///
 /// This producer claims it produces a [BacklinkInitializer] change, while it actually does not. The
 /// [BacklinkQueryReferenceRepository] claims it requires it, however. This little trick ensures the
@@ -25,13 +31,14 @@ final class BacklinkInitializer
     extends EntityProcessor<BacklinkQueryReference>
 {
     private final BacklinkQueryReferenceRepository repository;
-    private final Vault vault;
+    private final LinkRepository linkRepository;
 
     @Inject
-    BacklinkInitializer(BacklinkQueryReferenceRepository repository, Vault vault)
+    BacklinkInitializer(
+        BacklinkQueryReferenceRepository repository, LinkRepository linkRepository)
     {
         this.repository = repository;
-        this.vault = vault;
+        this.linkRepository = linkRepository;
     }
 
     @Override
@@ -47,39 +54,25 @@ final class BacklinkInitializer
     }
 
     @Override
-    protected void entityCreated(BacklinkQueryReference reference, ChangeCollector collector)
+    public Set<Class<?>> requiredPayloadTypes()
     {
-        var backlinkDocumentName = reference.backlinkDocumentName();
-        if (!repository.hasBacklinkReference(backlinkDocumentName))
-        {
-            vault.accept(new BacklinkFinder(backlinkDocumentName, collector));
-        }
+        return Set.of(LinkRepository.class);
     }
 
-    private static class BacklinkFinder
-        extends BreadthFirstVaultVisitor
+    @Override
+    public Collection<Change<?>> createChangeCollection()
     {
-        private final String backlinkDocumentName;
-        private final ChangeCollector collector;
-
-        private BacklinkFinder(String backlinkDocumentName, ChangeCollector collector)
-        {
-            this.backlinkDocumentName = backlinkDocumentName;
-            this.collector = collector;
-        }
+        return new HashSet<>();
+    }
 
-        @Override
-        public void visit(Document document)
+    @Override
+    protected void entityCreated(BacklinkQueryReference reference, ChangeCollector collector)
+    {
+        var backlinkDocumentName = reference.backlinkDocumentName();
+        if (!repository.hasBacklinkReference(backlinkDocumentName))
         {
-            if (document.findInternalLinks().stream()
-                .map(InternalLink::targetDocument)
-                .anyMatch(targetDocumentName -> targetDocumentName.equals(backlinkDocumentName)))
-            {
-                collector.create(
-                    new Backlink(backlinkDocumentName, document.name()),
-                    Backlink.class
-                );
-            }
+            linkRepository.backlinksTo(backlinkDocumentName).forEach(backlink ->
+                collector.create(backlink, Backlink.class));
         }
     }
 }
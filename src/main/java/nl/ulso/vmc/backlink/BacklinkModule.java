@@ -2,24 +2,46 @@ package nl.ulso.vmc.backlink;
 
 import dagger.Binds;
 import dagger.Module;
+import dagger.Provides;
 import dagger.multibindings.IntoSet;
+import jakarta.inject.Named;
 import nl.ulso.curator.change.ChangeProcessor;
 import nl.ulso.curator.query.Query;
 import nl.ulso.curator.statistics.MeasurementTracker;
 
+import java.nio.file.Path;
+
+import static java.lang.Runtime.getRuntime;
+import static nl.ulso.vmc.backlink.InternalLinkCache.LINK_SNAPSHOT_KEY;
+
 /// Keeps track of backlinks to documents, but only for documents they are requested for.
 ///
 /// Keeping all backlinks in memory all the time incurs quite a big hit on memory, which is a waste
 /// if these backlinks are not actually used.
 ///
 /// For that reason this module keeps track of backlinks only for those documents that are
-/// referenced by the [BacklinkQuery] (also provided by this module).
+/// referenced by the [BacklinkQuery] (also provided by this module). To be able to start tracking a
+/// document quickly, the module does keep a compact reverse index of all links in the vault, by
+/// document name only; see [LinkRepository].
 ///
 /// This module requires no external configuration. Including it is enough, after which the
 /// `backlinks` query becomes available.
 @Module
 public abstract class BacklinkModule
 {
+    @Provides
+    @Named(LINK_SNAPSHOT_KEY)
+    static Path provideLinkSnapshotPath(Path vaultPath)
+    {
+        return InternalLinkCache.snapshotPathFor(vaultPath);
+    }
+
+    @Provides
+    static InternalLinkCache.ShutdownHooks provideShutdownHooks()
+    {
+        return hook -> getRuntime().addShutdownHook(new Thread(hook));
+    }
+
     @Binds
     @IntoSet
     abstract ChangeProcessor bindBacklinkQueryReferenceProducer(
@@ -39,6 +61,17 @@ public abstract class BacklinkModule
     abstract MeasurementTracker bindBacklinkQueryReferenceTracker(
         DefaultBacklinkQueryReferenceRepository repository);
 
+    @Binds
+    @IntoSet
+    abstract ChangeProcessor bindLinkProcessor(DefaultLinkRepository repository);
+
+    @Binds
+    abstract LinkRepository bindLinkRepository(DefaultLinkRepository repository);
+
+    @Binds
+    @IntoSet
+    abstract MeasurementTracker bindLinkTracker(DefaultLinkRepository repository);
+
     @Binds
     @IntoSet
     abstract ChangeProcessor bindBacklinkProducer(BacklinkProducer producer);
@@ -5,28 +5,33 @@ import jakarta.inject.Singleton;
 import nl.ulso.curator.change.ChangeCollector;
 import nl.ulso.curator.change.EntityProcessor;
 import nl.ulso.curator.vault.Document;
-import nl.ulso.curator.vault.InternalLink;
 
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
-import static java.util.Collections.emptySet;
-import static java.util.stream.Collectors.toSet;
+import static nl.ulso.vmc.backlink.Backlink.newBacklink;
 
 /// Produces backlinks to documents from other documents, but only for the documents that are
 /// tracked by the [BacklinkQueryReferenceRepository].
 ///
-/// Backlinks are only created and deleted, never updated.
+/// Backlinks are created and deleted as links come and go. Backlinks from a document that is
+/// updated, and that still links to the same document, are updated to carry the new metadata.
+///
+/// Links are extracted from documents through the shared [InternalLinkCache]. This producer is the
+/// last one in the pipeline to need them, so it evicts documents from the cache when they are
+/// deleted.
 @Singleton
 final class BacklinkProducer
     extends EntityProcessor<Document>
 {
     private final BacklinkQueryReferenceRepository repository;
+    private final InternalLinkCache linkCache;
 
     @Inject
-    BacklinkProducer(BacklinkQueryReferenceRepository repository)
+    BacklinkProducer(BacklinkQueryReferenceRepository repository, InternalLinkCache linkCache)
     {
         this.repository = repository;
+        this.linkCache = linkCache;
     }
 
     @Override
@@ -50,49 +55,116 @@ final class BacklinkProducer
     @Override
     protected void entityCreated(Document newDocument, ChangeCollector collector)
     {
-        findBacklinks(newDocument).forEach(link ->
-            collector.create(new Backlink(link, newDocument.name()), Backlink.class));
+        var backlinkDocumentNames = repository.backlinkDocumentNames();
+        if (backlinkDocumentNames.isEmpty())
+        {
+            return;
+        }
+        linkCache.linkCountsOf(newDocument).forEach((link, count) ->
+        {
+            if (backlinkDocumentNames.contains(link))
+            {
+                collector.create(newBacklink(link, newDocument, count), Backlink.class);
+            }
+        });
     }
 
     @Override
     protected void entityUpdated(
         Document oldDocument, Document newDocument, ChangeCollector collector)
     {
-        var oldLinks = findBacklinks(oldDocument);
-        var newLinks = findBacklinks(newDocument);
-        if (!oldLinks.isEmpty())
+        var backlinkDocumentNames = repository.backlinkDocumentNames();
+        if (backlinkDocumentNames.isEmpty())
         {
-            var deletedLinks = new HashSet<>(oldLinks);
-            oldLinks.removeAll(newLinks);
-            deletedLinks.forEach(
-                link -> collector.delete(new Backlink(link, oldDocument.name()), Backlink.class));
+            return;
         }
-        if (!newLinks.isEmpty())
+        diffLinkCounts(
+            linkCache.linkCountsOf(oldDocument),
+            linkCache.linkCountsOf(newDocument),
+            backlinkDocumentNames,
+            new LinkCountListener()
+            {
+                @Override
+                public void linkCreated(String link, int count)
+                {
+                    collector.create(newBacklink(link, newDocument, count), Backlink.class);
+                }
+
+                @Override
+                public void linkUpdated(String link, int oldCount, int newCount)
+                {
+                    collector.update(
+                        newBacklink(link, oldDocument, oldCount),
+                        newBacklink(link, newDocument, newCount),
+                        Backlink.class
+                    );
+                }
+
+                @Override
+                public void linkDeleted(String link, int count)
+                {
+                    collector.delete(newBacklink(link, oldDocument, count), Backlink.class);
+                }
+            }
+        );
+    }
+
+    /// Reports only the true differences between the links in the old and the new version of a
+    /// document, restricted to the tracked links, without copying either set of links. Both come
+    /// from the [InternalLinkCache] and must not be modified. Links that exist in both versions
+    /// are reported as updated, to carry the new metadata.
+    static void diffLinkCounts(
+        Map<String, Integer> oldLinks, Map<String, Integer> newLinks, Set<String> trackedLinks,
+        LinkCountListener listener)
+    {
+        oldLinks.forEach((link, count) ->
         {
-            var createdLinks = new HashSet<>(newLinks);
-            createdLinks.removeAll(oldLinks);
-            createdLinks.forEach(
-                link -> collector.create(new Backlink(link, newDocument.name()), Backlink.class));
-        }
+            if (!newLinks.containsKey(link) && trackedLinks.contains(link))
+            {
+                listener.linkDeleted(link, count);
+            }
+        });
+        newLinks.forEach((link, count) ->
+        {
+            if (!trackedLinks.contains(link))
+            {
+                return;
+            }
+            var oldCount = oldLinks.get(link);
+            if (oldCount == null)
+            {
+                listener.linkCreated(link, count);
+            }
+            else
+            {
+                listener.linkUpdated(link, oldCount, count);
+            }
+        });
     }
 
-    @Override
-    protected void entityDeleted(Document oldDocument, ChangeCollector collector)
+    interface LinkCountListener
     {
-        findBacklinks(oldDocument).forEach(link ->
-            collector.delete(new Backlink(link, oldDocument.name()), Backlink.class));
+        void linkCreated(String link, int count);
+
+        void linkUpdated(String link, int oldCount, int newCount);
+
+        void linkDeleted(String link, int count);
     }
 
-    private Set<String> findBacklinks(Document document)
+    @Override
+    protected void entityDeleted(Document oldDocument, ChangeCollector collector)
     {
         var backlinkDocumentNames = repository.backlinkDocumentNames();
-        if (backlinkDocumentNames.isEmpty())
+        if (!backlinkDocumentNames.isEmpty())
         {
-            return emptySet();
+            linkCache.linkCountsOf(oldDocument).forEach((link, count) ->
+            {
+                if (backlinkDocumentNames.contains(link))
+                {
+                    collector.delete(newBacklink(link, oldDocument, count), Backlink.class);
+                }
+            });
         }
-        return document.findInternalLinks().stream()
-            .map(InternalLink::targetDocument)
-            .filter(backlinkDocumentNames::contains)
-            .collect(toSet());
+        linkCache.evict(oldDocument);
     }
 }
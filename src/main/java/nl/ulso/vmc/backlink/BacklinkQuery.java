@@ -2,13 +2,21 @@ package nl.ulso.vmc.backlink;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import nl.ulso.curator.change.Change;
 import nl.ulso.curator.change.Changelog;
 import nl.ulso.curator.query.*;
+import nl.ulso.curator.vault.Document;
 import nl.ulso.emoji.EmojiStripper;
 
-import java.util.Map;
+import java.lang.ref.WeakReference;
+import java.util.*;
 
+import static java.util.Collections.emptyMap;
 import static java.util.Comparator.comparing;
+import static java.util.Comparator.comparingInt;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.groupingBy;
+import static nl.ulso.curator.change.Change.Kind.UPDATE;
 
 @Singleton
 final class BacklinkQuery
@@ -16,15 +24,30 @@ final class BacklinkQuery
 {
     static final String BACKLINK_QUERY_NAME = "backlinks";
     private static final String DOCUMENT_PROPERTY = "document";
+    private static final String SORT_PROPERTY = "sort";
+    private static final String LIMIT_PROPERTY = "limit";
+    private static final String DEPTH_PROPERTY = "depth";
+    private static final String SORT_BY_NAME = "name";
+    private static final String SORT_BY_COUNT = "count";
+    private static final String SORT_BY_MODIFIED = "modified";
+    private static final String COLUMN_DISTANCE = "Distance";
+    private static final String COLUMN_DOCUMENT = "Document";
+    private static final int DEFAULT_MAXIMUM_ROWS = 1_000;
 
     private final BacklinkRepository repository;
+    private final LinkRepository linkRepository;
     private final QueryResultFactory queryResultFactory;
+    private volatile BacklinkChanges lastChanges;
 
     @Inject
-    BacklinkQuery(BacklinkRepository repository, QueryResultFactory queryResultFactory)
+    BacklinkQuery(
+        BacklinkRepository repository, LinkRepository linkRepository,
+        QueryResultFactory queryResultFactory)
     {
         this.repository = repository;
+        this.linkRepository = linkRepository;
         this.queryResultFactory = queryResultFactory;
+        this.lastChanges = new BacklinkChanges(new WeakReference<>(null), emptyMap());
     }
 
     @Override
@@ -52,28 +75,188 @@ final class BacklinkQuery
     {
         return Map.of(
             DOCUMENT_PROPERTY,
-            "The document to generate backlinks for; defaults to the current document"
+            "The document to generate backlinks for; defaults to the current document",
+            SORT_PROPERTY,
+            "How to sort the backlinks: '" + SORT_BY_NAME + "' (alphabetically, the default), '"
+            + SORT_BY_COUNT + "' (most links first) or '" + SORT_BY_MODIFIED
+            + "' (most recently modified first); only by name beyond a depth of 1",
+            LIMIT_PROPERTY,
+            "Maximum number of backlinks to list; defaults to 0, meaning no limit; beyond a depth"
+            + " of 1, the default is " + DEFAULT_MAXIMUM_ROWS + " with a notice when reached",
+            DEPTH_PROPERTY,
+            "Number of hops to follow backlinks; defaults to 1. Beyond 1, the output is a table"
+            + " of documents grouped by distance, sorted by name within each group"
         );
     }
 
+    /// Backlinks are updated every time a linking document changes. Only the sort modes that
+    /// depend on the metadata of backlinks are impacted by such updates.
+    ///
+    /// This method is called for every `backlinks` query in the vault, each time with the same
+    /// changelog. The backlink changes in the changelog are therefore grouped by target document
+    /// once, after which each query needs a single lookup. Only the grouped changes are kept, with
+    /// a weak reference to identify the changelog they came from, so that a changelog - including
+    /// the large one from the initial load of the vault - is never kept alive by this query.
+    ///
+    /// Queries that follow backlinks over more than one hop can be impacted by a change to any
+    /// document in the vault; these are re-run on every document change.
     @Override
     public boolean isImpactedBy(Changelog changelog, QueryDefinition definition)
     {
-        var targetDocumentName = resolveDocumentName(definition);
-        return changelog.changesFor(Backlink.class)
-            .anyMatch(change ->
-                change.value().targetDocumentName().contentEquals(targetDocumentName)
-            );
+        if (resolveDepth(definition) > 1
+            && changelog.changesFor(Document.class).findFirst().isPresent())
+        {
+            return true;
+        }
+        var changes = backlinkChangesIn(changelog).get(resolveDocumentName(definition));
+        if (changes == null)
+        {
+            return false;
+        }
+        var sort = resolveSort(definition);
+        return changes.stream()
+            .anyMatch(change -> change.kind() != UPDATE || isImpactedByUpdate(sort, change));
+    }
+
+    private Map<String, List<Change<Backlink>>> backlinkChangesIn(Changelog changelog)
+    {
+        var changes = lastChanges;
+        if (changes.changelog().get() != changelog)
+        {
+            changes = new BacklinkChanges(new WeakReference<>(changelog),
+                changelog.changesFor(Backlink.class)
+                .collect(groupingBy(change -> change.value().targetDocumentName())));
+            lastChanges = changes;
+        }
+        return changes.byTargetDocumentName();
+    }
+
+    private static boolean isImpactedByUpdate(String sort, Change<Backlink> change)
+    {
+        return switch (sort)
+        {
+            case SORT_BY_MODIFIED -> true;
+            case SORT_BY_COUNT -> change.oldValue().linkCount() != change.newValue().linkCount();
+            default -> false;
+        };
     }
 
     @Override
     public QueryResult run(QueryDefinition definition)
     {
         var targetDocumentName = resolveDocumentName(definition);
-        var links = repository.backlinksFor(targetDocumentName).stream()
-            .sorted(comparing(EmojiStripper::stripEmojisFrom))
-            .map(documentName -> "[[" + documentName + "]]")
+        var depth = resolveDepth(definition);
+        if (depth > 1)
+        {
+            return runTransitive(targetDocumentName, depth, definition);
+        }
+        var backlinks = repository.backlinksFor(targetDocumentName).stream()
+            .map(SortableBacklink::new)
+            .sorted(comparatorFor(resolveSort(definition)));
+        var limit = definition.configuration().integer(LIMIT_PROPERTY, 0);
+        if (limit > 0)
+        {
+            backlinks = backlinks.limit(limit);
+        }
+        var links = backlinks
+            .map(backlink -> "[[" + backlink.backlink().sourceDocumentName() + "]]")
             .toList();
         return queryResultFactory.unorderedList(links);
     }
+
+    /// Lists all documents linking to the target document within the maximum depth, grouped by
+    /// distance. The search goes through the vault-wide [LinkRepository], since backlinks are
+    /// tracked only for documents that have a `backlinks` query.
+    ///
+    /// Only documents are known here, not backlinks with their metadata, so the only supported
+    /// sort is by name, within each distance.
+    ///
+    /// The search visits one document more than the number of rows to list: the limit if there
+    /// is one, a fixed maximum otherwise. The search cuts off in the same order the rows are
+    /// listed in, so the rows are always the first ones. If the search found more than that without
+    /// a limit, a last row says the list is incomplete.
+    private QueryResult runTransitive(
+        String targetDocumentName, int depth, QueryDefinition definition)
+    {
+        var sort = resolveSort(definition);
+        if (!sort.equals(SORT_BY_NAME))
+        {
+            return queryResultFactory.error("Sort '" + sort + "' is not supported for a "
+                                            + DEPTH_PROPERTY + " beyond 1");
+        }
+        var limit = definition.configuration().integer(LIMIT_PROPERTY, 0);
+        var maximumRows = limit > 0 ? limit : DEFAULT_MAXIMUM_ROWS;
+        var maximumVisits = (int) Math.min(maximumRows + 1L, Integer.MAX_VALUE);
+        var groups = linkRepository.documentsLinkingTo(targetDocumentName, depth, maximumVisits);
+        if (groups.isEmpty())
+        {
+            return queryResultFactory.empty();
+        }
+        var table = new ArrayList<Map<String, String>>();
+        for (var i = 0; i < groups.size(); i++)
+        {
+            var distance = Integer.toString(i + 1);
+            DocumentNameOrder.sorted(groups.get(i)).forEach(documentName -> table.add(Map.of(
+                COLUMN_DISTANCE, distance,
+                COLUMN_DOCUMENT, "[[" + documentName + "]]"
+            )));
+        }
+        if (table.size() <= maximumRows)
+        {
+            return queryResultFactory.table(List.of(COLUMN_DISTANCE, COLUMN_DOCUMENT), table);
+        }
+        var rows = new ArrayList<>(table.subList(0, maximumRows));
+        if (limit <= 0)
+        {
+            rows.add(Map.of(
+                COLUMN_DISTANCE, "…",
+                COLUMN_DOCUMENT, "*Truncated at " + maximumRows + " documents; set a "
+                                 + LIMIT_PROPERTY + " to list more*"
+            ));
+        }
+        return queryResultFactory.table(List.of(COLUMN_DISTANCE, COLUMN_DOCUMENT), rows);
+    }
+
+    private static int resolveDepth(QueryDefinition definition)
+    {
+        return definition.configuration().integer(DEPTH_PROPERTY, 1);
+    }
+
+    private static String resolveSort(QueryDefinition definition)
+    {
+        return definition.configuration().string(SORT_PROPERTY, SORT_BY_NAME);
+    }
+
+    private static Comparator<SortableBacklink> comparatorFor(String sort)
+    {
+        var byName = comparing(SortableBacklink::sortKey);
+        return switch (sort)
+        {
+            case SORT_BY_COUNT -> comparingInt(
+                (SortableBacklink backlink) -> backlink.backlink().linkCount())
+                .reversed()
+                .thenComparing(byName);
+            case SORT_BY_MODIFIED -> comparingLong(
+                (SortableBacklink backlink) -> backlink.backlink().sourceLastModified())
+                .reversed()
+                .thenComparing(byName);
+            default -> byName;
+        };
+    }
+
+    private record BacklinkChanges(
+        WeakReference<Changelog> changelog,
+        Map<String, List<Change<Backlink>>> byTargetDocumentName)
+    {
+    }
+
+    /// Holds a backlink together with its sort key, so that emojis are stripped from the name of
+    /// each document only once, instead of for every comparison.
+    private record SortableBacklink(Backlink backlink, String sortKey)
+    {
+        SortableBacklink(Backlink backlink)
+        {
+            this(backlink, EmojiStripper.stripEmojisFrom(backlink.sourceDocumentName()));
+        }
+    }
 }
@@ -6,8 +6,7 @@ import nl.ulso.curator.change.ChangeCollector;
 import nl.ulso.curator.change.EntityProcessor;
 import nl.ulso.curator.vault.*;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 import static nl.ulso.vmc.backlink.BacklinkQuery.BACKLINK_QUERY_NAME;
 import static nl.ulso.vmc.backlink.BacklinkQuery.resolveDocumentName;
@@ -16,13 +15,23 @@ import static nl.ulso.vmc.backlink.BacklinkQuery.resolveDocumentName;
 /// and parsing their query configuration.
 ///
 /// [BacklinkQueryReference]s are only created and deleted, never updated.
+///
+/// Most documents do not contain a `backlinks` query at all. Before walking a document, a cheap
+/// check runs over its sections only, skipping all other fragments, and stops at the first
+/// `backlinks` query it finds. Documents without one are never walked, and share a single empty
+/// set of references. On top of that the references found in the latest version of each document
+/// are kept, keyed on the document's last modification time, so that the old document of an
+/// update is always served from memory.
 @Singleton
 final class BacklinkQueryReferenceProducer
     extends EntityProcessor<Document>
 {
+    private final Map<String, CachedReferences> cache;
+
     @Inject
     BacklinkQueryReferenceProducer()
     {
+        this.cache = new HashMap<>();
     }
 
     @Override
@@ -76,13 +85,52 @@ final class BacklinkQueryReferenceProducer
             backlinkQueryReference -> collector.delete(backlinkQueryReference,
                 BacklinkQueryReference.class
             ));
+        cache.remove(oldDocument.name());
     }
 
     private Set<BacklinkQueryReference> findBacklinkQueryReferences(Document document)
     {
-        var finder = new BacklinkQueryFinder();
-        document.accept(finder);
-        return finder.references;
+        var lastModified = document.lastModified();
+        var cached = cache.get(document.name());
+        if (cached != null && cached.lastModified() == lastModified)
+        {
+            return cached.references();
+        }
+        var references = Set.<BacklinkQueryReference>of();
+        if (containsBacklinkQuery(document.fragments()))
+        {
+            var finder = new BacklinkQueryFinder();
+            document.accept(finder);
+            references = finder.references;
+        }
+        if (cached == null || lastModified > cached.lastModified())
+        {
+            cache.put(document.name(), new CachedReferences(lastModified, references));
+        }
+        return references;
+    }
+
+    /// Query blocks are only ever direct children of a document or a section, so there's no need to
+    /// look anywhere else.
+    private static boolean containsBacklinkQuery(List<Fragment> fragments)
+    {
+        for (Fragment fragment : fragments)
+        {
+            if (fragment instanceof QueryBlock queryBlock
+                && queryBlock.queryName().contentEquals(BACKLINK_QUERY_NAME))
+            {
+                return true;
+            }
+            if (fragment instanceof Section section && containsBacklinkQuery(section.fragments()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record CachedReferences(long lastModified, Set<BacklinkQueryReference> references)
+    {
     }
 
     private static final class BacklinkQueryFinder
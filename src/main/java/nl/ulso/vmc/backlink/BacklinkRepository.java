@@ -1,8 +1,8 @@
 package nl.ulso.vmc.backlink;
 
-import java.util.Set;
+import java.util.Collection;
 
 interface BacklinkRepository
 {
-    Set<String> backlinksFor(String documentName);
+    Collection<Backlink> backlinksFor(String documentName);
 }
@@ -2,31 +2,47 @@ package nl.ulso.vmc.backlink;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import nl.ulso.curator.change.SetBasedEntityRepository;
+import nl.ulso.curator.change.*;
+import nl.ulso.curator.statistics.MeasurementCollector;
+import nl.ulso.curator.statistics.MeasurementTracker;
 
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
 
+import static java.util.Collections.unmodifiableSet;
+import static nl.ulso.curator.change.Change.isCreate;
+import static nl.ulso.curator.change.Change.isDelete;
+import static nl.ulso.curator.change.Change.isPayloadType;
+import static nl.ulso.curator.change.ChangeHandler.newChangeHandler;
+
+/// Keeps track of all [BacklinkQueryReference]s, indexed on the backlink document name.
+///
+/// This repository claims it produces [BacklinkQueryReferenceRepository] changes, while it actually
+/// does not. Processors that need an up-to-date view on the references claim they require it.
 @Singleton
 final class DefaultBacklinkQueryReferenceRepository
-    extends SetBasedEntityRepository<BacklinkQueryReference>
-    implements BacklinkQueryReferenceRepository
+    extends ChangeProcessorTemplate
+    implements BacklinkQueryReferenceRepository, MeasurementTracker
 {
+    private final Map<String, Set<String>> references;
+    private int size;
+
     @Inject
     DefaultBacklinkQueryReferenceRepository()
     {
+        this.references = new HashMap<>();
+        this.size = 0;
     }
 
     @Override
-    protected Class<?> repositoryClass()
+    public Set<Class<?>> consumedPayloadTypes()
     {
-        return BacklinkQueryReferenceRepository.class;
+        return Set.of(BacklinkQueryReference.class);
     }
 
     @Override
-    protected Class<BacklinkQueryReference> entityClass()
+    public Set<Class<?>> producedPayloadTypes()
     {
-        return BacklinkQueryReference.class;
+        return Set.of(BacklinkQueryReferenceRepository.class);
     }
 
     @Override
@@ -36,18 +52,66 @@ final class DefaultBacklinkQueryReferenceRepository
     }
 
     @Override
-    public boolean hasBacklinkReference(String backlinkDocumentName)
+    protected List<? extends ChangeHandler> createChangeHandlers()
     {
-        return set().stream().anyMatch(reference ->
-            reference.backlinkDocumentName().contentEquals(backlinkDocumentName)
+        return List.of(
+            newChangeHandler(
+                isPayloadType(BacklinkQueryReference.class).and(isCreate()),
+                this::referenceCreated
+            ),
+            newChangeHandler(
+                isPayloadType(BacklinkQueryReference.class).and(isDelete()),
+                this::referenceDeleted
+            )
         );
     }
 
+    @Override
+    public void reset()
+    {
+        references.clear();
+        size = 0;
+    }
+
+    private void referenceCreated(Change<?> change, ChangeCollector collector)
+    {
+        var reference = change.as(BacklinkQueryReference.class).value();
+        if (references.computeIfAbsent(reference.backlinkDocumentName(), _ -> new HashSet<>())
+            .add(reference.originDocumentName()))
+        {
+            size++;
+        }
+    }
+
+    private void referenceDeleted(Change<?> change, ChangeCollector collector)
+    {
+        var reference = change.as(BacklinkQueryReference.class).value();
+        var origins = references.get(reference.backlinkDocumentName());
+        if (origins != null && origins.remove(reference.originDocumentName()))
+        {
+            size--;
+            if (origins.isEmpty())
+            {
+                references.remove(reference.backlinkDocumentName());
+            }
+        }
+    }
+
+    @Override
+    public void collectMeasurements(MeasurementCollector collector)
+    {
+        collector.total(BacklinkQueryReference.class, size);
+    }
+
+    @Override
+    public boolean hasBacklinkReference(String backlinkDocumentName)
+    {
+        return references.containsKey(backlinkDocumentName);
+    }
+
     @Override
     public Set<String> backlinkDocumentNames()
     {
-        return set().stream()
-            .map(BacklinkQueryReference::backlinkDocumentName)
-            .collect(Collectors.toSet());
+        return unmodifiableSet(references.keySet());
     }
 }
@@ -2,40 +2,106 @@ package nl.ulso.vmc.backlink;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
-import nl.ulso.curator.change.SetBasedEntityRepository;
+import nl.ulso.curator.change.*;
+import nl.ulso.curator.statistics.MeasurementCollector;
 import nl.ulso.curator.statistics.MeasurementTracker;
 
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
 
+import static java.util.Collections.emptyList;
+import static nl.ulso.curator.change.Change.isCreate;
+import static nl.ulso.curator.change.Change.isDelete;
+import static nl.ulso.curator.change.Change.isPayloadType;
+import static nl.ulso.curator.change.Change.isUpdate;
+import static nl.ulso.curator.change.ChangeHandler.newChangeHandler;
+
+/// Keeps track of all [Backlink]s, indexed on the name of the target document and then on the name
+/// of the source document.
+///
+/// Looking up the backlinks for a document is a single map lookup; its cost depends only on the
+/// number of backlinks found, not on the total number of backlinks tracked. Updates replace the
+/// metadata of a backlink.
 @Singleton
 final class DefaultBacklinkRepository
-    extends SetBasedEntityRepository<Backlink>
+    extends ChangeProcessorTemplate
     implements MeasurementTracker, BacklinkRepository
 {
+    private final Map<String, Map<String, Backlink>> backlinks;
+    private int size;
+
     @Inject
     DefaultBacklinkRepository()
     {
+        this.backlinks = new HashMap<>();
+        this.size = 0;
+    }
+
+    @Override
+    public Set<Class<?>> consumedPayloadTypes()
+    {
+        return Set.of(Backlink.class);
+    }
+
+    @Override
+    protected List<? extends ChangeHandler> createChangeHandlers()
+    {
+        return List.of(
+            newChangeHandler(
+                isPayloadType(Backlink.class).and(isCreate().or(isUpdate())),
+                this::backlinkChanged
+            ),
+            newChangeHandler(
+                isPayloadType(Backlink.class).and(isDelete()),
+                this::backlinkDeleted
+            )
+        );
     }
 
     @Override
-    protected Class<Backlink> entityClass()
+    public void reset()
+    {
+        backlinks.clear();
+        size = 0;
+    }
+
+    private void backlinkChanged(Change<?> change, ChangeCollector collector)
+    {
+        var backlink = change.as(Backlink.class).newValue();
+        if (backlinks.computeIfAbsent(backlink.targetDocumentName(), _ -> new HashMap<>())
+                .put(backlink.sourceDocumentName(), backlink) == null)
+        {
+            size++;
+        }
+    }
+
+    private void backlinkDeleted(Change<?> change, ChangeCollector collector)
     {
-        return Backlink.class;
+        var backlink = change.as(Backlink.class).oldValue();
+        var sources = backlinks.get(backlink.targetDocumentName());
+        if (sources != null && sources.remove(backlink.sourceDocumentName()) != null)
+        {
+            size--;
+            if (sources.isEmpty())
+            {
+                backlinks.remove(backlink.targetDocumentName());
+            }
+        }
     }
 
     @Override
-    protected Class<?> repositoryClass()
+    public void collectMeasurements(MeasurementCollector collector)
     {
-        return BacklinkRepository.class;
+        collector.total(Backlink.class, size);
     }
 
     @Override
-    public Set<String> backlinksFor(String documentName)
+    public Collection<Backlink> backlinksFor(String documentName)
     {
-        return set().stream()
-            .filter(backlink -> backlink.targetDocumentName().contentEquals(documentName))
-            .map(Backlink::sourceDocumentName)
-            .collect(Collectors.toSet());
+        var sources = backlinks.get(documentName);
+        if (sources == null)
+        {
+            return emptyList();
+        }
+        return List.copyOf(sources.values());
     }
 }
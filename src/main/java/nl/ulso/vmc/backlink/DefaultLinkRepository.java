@@ -0,0 +1,196 @@
+package nl.ulso.vmc.backlink;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import nl.ulso.curator.change.*;
+import nl.ulso.curator.statistics.MeasurementCollector;
+import nl.ulso.curator.statistics.MeasurementTracker;
+import nl.ulso.curator.vault.Document;
+import nl.ulso.curator.vault.InternalLink;
+
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static nl.ulso.curator.change.Change.isCreate;
+import static nl.ulso.curator.change.Change.isDelete;
+import static nl.ulso.curator.change.Change.isPayloadType;
+import static nl.ulso.curator.change.Change.isUpdate;
+import static nl.ulso.curator.change.ChangeHandler.newChangeHandler;
+import static nl.ulso.vmc.backlink.Backlink.newBacklink;
+
+/// Keeps a reverse index of all internal links in the vault: for every document, the set of
+/// documents that link to it. Next to that it keeps the latest version of every document, to be
+/// able to produce [Backlink]s including their metadata.
+///
+/// The index is built up from [Document] changes as they come in, which includes the initial load
+/// of the vault. Links are extracted from documents through the shared [InternalLinkCache].
+///
+/// This repository claims it produces [LinkRepository] changes, while it actually does not. The
+/// [BacklinkInitializer] claims it requires them. That ensures the index is up to date by the time
+/// a new [BacklinkQueryReference] is resolved.
+@Singleton
+final class DefaultLinkRepository
+    extends ChangeProcessorTemplate
+    implements LinkRepository, MeasurementTracker
+{
+    private final InternalLinkCache linkCache;
+    private final Map<String, Document> documents;
+    private final Map<String, Set<String>> incomingLinks;
+
+    @Inject
+    DefaultLinkRepository(InternalLinkCache linkCache)
+    {
+        this.linkCache = linkCache;
+        this.documents = new HashMap<>();
+        this.incomingLinks = new HashMap<>();
+    }
+
+    @Override
+    public Set<Class<?>> consumedPayloadTypes()
+    {
+        return Set.of(Document.class);
+    }
+
+    @Override
+    public Set<Class<?>> producedPayloadTypes()
+    {
+        return Set.of(LinkRepository.class);
+    }
+
+    @Override
+    protected List<? extends ChangeHandler> createChangeHandlers()
+    {
+        return List.of(
+            newChangeHandler(
+                isPayloadType(Document.class).and(isCreate().or(isUpdate())),
+                this::documentChanged
+            ),
+            newChangeHandler(
+                isPayloadType(Document.class).and(isDelete()),
+                this::documentDeleted
+            )
+        );
+    }
+
+    @Override
+    public void reset()
+    {
+        documents.clear();
+        incomingLinks.clear();
+    }
+
+    private void documentChanged(Change<?> change, ChangeCollector collector)
+    {
+        var document = change.as(Document.class).value();
+        var sourceName = document.name();
+        var newTargets = linkCache.linkTargetsOf(document);
+        var oldDocument = documents.put(sourceName, document);
+        if (oldDocument != null)
+        {
+            linkCache.linkTargetsOf(oldDocument).stream()
+                .filter(target -> !newTargets.contains(target))
+                .forEach(target -> removeIncomingLink(target, sourceName));
+        }
+        newTargets.forEach(target ->
+            incomingLinks.computeIfAbsent(target, _ -> new HashSet<>()).add(sourceName));
+    }
+
+    private void documentDeleted(Change<?> change, ChangeCollector collector)
+    {
+        var sourceName = change.as(Document.class).value().name();
+        var oldDocument = documents.remove(sourceName);
+        if (oldDocument != null)
+        {
+            linkCache.linkTargetsOf(oldDocument)
+                .forEach(target -> removeIncomingLink(target, sourceName));
+        }
+    }
+
+    private void removeIncomingLink(String targetName, String sourceName)
+    {
+        var sources = incomingLinks.get(targetName);
+        if (sources != null)
+        {
+            sources.remove(sourceName);
+            if (sources.isEmpty())
+            {
+                incomingLinks.remove(targetName);
+            }
+        }
+    }
+
+    @Override
+    public void collectMeasurements(MeasurementCollector collector)
+    {
+        collector.total(InternalLink.class,
+            incomingLinks.values().stream().mapToInt(Set::size).sum());
+    }
+
+    @Override
+    public Collection<Backlink> backlinksTo(String documentName)
+    {
+        var sources = incomingLinks.get(documentName);
+        if (sources == null)
+        {
+            return emptyList();
+        }
+        var backlinks = new ArrayList<Backlink>(sources.size());
+        for (String sourceName : sources)
+        {
+            var document = documents.get(sourceName);
+            var linkCount = linkCache.linkCountsOf(document).get(documentName);
+            backlinks.add(newBacklink(documentName, document, linkCount));
+        }
+        return backlinks;
+    }
+
+    @Override
+    public List<List<String>> documentsLinkingTo(
+        String documentName, int maximumDepth, int maximumVisits)
+    {
+        return documentsLinkingTo(incomingLinks, documentName, maximumDepth, maximumVisits);
+    }
+
+    /// Each level of the search is collected in full before the visit budget is applied. A level
+    /// that doesn't fit within the budget is put in [DocumentNameOrder] and cut off, after which
+    /// the search stops. The outcome therefore never depends on the iteration order of the sets in
+    /// the index, and the documents that are kept are the ones listed first.
+    static List<List<String>> documentsLinkingTo(
+        Map<String, Set<String>> incomingLinks, String documentName, int maximumDepth,
+        int maximumVisits)
+    {
+        var result = new ArrayList<List<String>>(maximumDepth);
+        var visited = new HashSet<String>();
+        visited.add(documentName);
+        List<String> frontier = List.of(documentName);
+        var remainingVisits = maximumVisits;
+        for (var depth = 1; depth <= maximumDepth && remainingVisits > 0; depth++)
+        {
+            var next = new ArrayList<String>();
+            for (String target : frontier)
+            {
+                for (String source : incomingLinks.getOrDefault(target, emptySet()))
+                {
+                    if (visited.add(source))
+                    {
+                        next.add(source);
+                    }
+                }
+            }
+            if (next.isEmpty())
+            {
+                break;
+            }
+            if (next.size() > remainingVisits)
+            {
+                result.add(DocumentNameOrder.sorted(next).subList(0, remainingVisits));
+                break;
+            }
+            remainingVisits -= next.size();
+            result.add(next);
+            frontier = next;
+        }
+        return result;
+    }
+}
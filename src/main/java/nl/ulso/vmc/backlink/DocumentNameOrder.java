@@ -0,0 +1,46 @@
+package nl.ulso.vmc.backlink;
+
+import nl.ulso.emoji.EmojiStripper;
+
+import java.util.Collection;
+import java.util.List;
+
+/// The order in which documents are listed by name: by their name with emojis stripped, and then by
+/// their full name, so that no two documents are ever equal.
+///
+/// Everything that lists documents by name, or picks the first few of them, uses this order, so
+/// that what is picked is always what is listed first.
+final class DocumentNameOrder
+{
+    private DocumentNameOrder()
+    {
+    }
+
+    /// Strips emojis from each name only once, instead of for every comparison.
+    ///
+    /// @return the names, in document name order.
+    static List<String> sorted(Collection<String> documentNames)
+    {
+        return documentNames.stream()
+            .map(SortKey::new)
+            .sorted()
+            .map(SortKey::documentName)
+            .toList();
+    }
+
+    private record SortKey(String documentName, String sortKey)
+        implements Comparable<SortKey>
+    {
+        SortKey(String documentName)
+        {
+            this(documentName, EmojiStripper.stripEmojisFrom(documentName));
+        }
+
+        @Override
+        public int compareTo(SortKey other)
+        {
+            var result = sortKey.compareTo(other.sortKey);
+            return result != 0 ? result : documentName.compareTo(other.documentName);
+        }
+    }
+}
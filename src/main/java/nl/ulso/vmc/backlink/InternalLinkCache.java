@@ -0,0 +1,222 @@
+package nl.ulso.vmc.backlink;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import nl.ulso.curator.vault.Document;
+import nl.ulso.curator.vault.InternalLink;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.summingInt;
+import static nl.ulso.hash.ShortHasher.shortHashOf;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/// Caches the names of the documents a document links to, and how often, per version of that
+/// document.
+///
+/// A version of a document is identified by its name and its last modification time. For every
+/// document the cache keeps at most two versions: the latest one, and the one before that. That is
+/// enough to serve both the old and the new document of an update from the cache, so that each
+/// version of a document is parsed for links only once, no matter how many processors ask for them.
+///
+/// Entries are evicted explicitly when a document is deleted, by the last processor in the
+/// pipeline that needs them; see [BacklinkProducer].
+///
+/// The latest version of every document is written to a snapshot file when the application shuts
+/// down, and read back in when it starts. The snapshot is kept in the user's cache directory, in a
+/// file per vault, never in the vault itself: a vault is often synced across devices. A snapshot
+/// that can't be read for whatever reason is ignored. During the initial load of
+/// the vault only the documents that were modified in the meantime are then parsed for links.
+/// Entries from the snapshot that are never asked for belong to documents that no longer exist;
+/// they are not written back.
+///
+/// Both the location of the snapshot and the registration of the shutdown hook are injected; see
+/// [BacklinkModule].
+@Singleton
+final class InternalLinkCache
+{
+    static final String LINK_SNAPSHOT_KEY = "link-snapshot";
+    private static final Logger LOGGER = getLogger(InternalLinkCache.class);
+    private static final String CACHE_FOLDER = "vincents-markdown-curator";
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Path snapshotPath;
+    private final Map<String, CachedLinks> cache;
+    private final Set<String> unconfirmed;
+
+    @Inject
+    InternalLinkCache(@Named(LINK_SNAPSHOT_KEY) Path snapshotPath, ShutdownHooks shutdownHooks)
+    {
+        this.snapshotPath = snapshotPath;
+        this.cache = new HashMap<>();
+        this.unconfirmed = new HashSet<>();
+        readSnapshot();
+        shutdownHooks.register(this::writeSnapshot);
+    }
+
+    /// @return the names of all documents the given document links to.
+    Set<String> linkTargetsOf(Document document)
+    {
+        return linkCountsOf(document).keySet();
+    }
+
+    /// @return the names of all documents the given document links to, each with the number of
+    /// links to it.
+    synchronized Map<String, Integer> linkCountsOf(Document document)
+    {
+        var lastModified = document.lastModified();
+        unconfirmed.remove(document.name());
+        var latest = cache.get(document.name());
+        if (latest != null)
+        {
+            if (latest.lastModified() == lastModified)
+            {
+                return latest.targets();
+            }
+            var previous = latest.previous();
+            if (previous != null && previous.lastModified() == lastModified)
+            {
+                return previous.targets();
+            }
+        }
+        var targets = Map.copyOf(document.findInternalLinks().stream()
+            .collect(groupingBy(InternalLink::targetDocument, summingInt(_ -> 1))));
+        if (latest == null)
+        {
+            cache.put(document.name(), new CachedLinks(lastModified, targets, null));
+        }
+        else if (lastModified > latest.lastModified())
+        {
+            cache.put(document.name(), new CachedLinks(lastModified, targets, latest.latestOnly()));
+        }
+        return targets;
+    }
+
+    synchronized void evict(Document document)
+    {
+        cache.remove(document.name());
+        unconfirmed.remove(document.name());
+    }
+
+    /// Follows the XDG base directory specification for the cache directory.
+    static Path snapshotPathFor(Path vaultPath)
+    {
+        var cacheHome = System.getenv("XDG_CACHE_HOME");
+        var cachePath = cacheHome != null && !cacheHome.isBlank()
+                        ? Path.of(cacheHome)
+                        : Path.of(System.getProperty("user.home"), ".cache");
+        var vaultName = shortHashOf(vaultPath.toAbsolutePath().normalize().toString());
+        return cachePath.resolve(CACHE_FOLDER).resolve("links-" + vaultName + ".bin");
+    }
+
+    private void readSnapshot()
+    {
+        if (!Files.isRegularFile(snapshotPath))
+        {
+            return;
+        }
+        try (var input = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(snapshotPath))))
+        {
+            if (input.readInt() != SNAPSHOT_VERSION)
+            {
+                LOGGER.info("Ignoring link snapshot in an outdated format.");
+                return;
+            }
+            var documentCount = input.readInt();
+            for (var i = 0; i < documentCount; i++)
+            {
+                var documentName = input.readUTF();
+                var lastModified = input.readLong();
+                var targetCount = input.readInt();
+                var targets = new HashMap<String, Integer>();
+                for (var j = 0; j < targetCount; j++)
+                {
+                    targets.put(input.readUTF(), input.readInt());
+                }
+                cache.put(documentName, new CachedLinks(lastModified, Map.copyOf(targets), null));
+                unconfirmed.add(documentName);
+            }
+            LOGGER.debug("Read links for {} documents from snapshot.", documentCount);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            LOGGER.warn("Could not read link snapshot. Starting without it.", e);
+            cache.clear();
+            unconfirmed.clear();
+        }
+    }
+
+    synchronized void writeSnapshot()
+    {
+        var temporaryPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try
+        {
+            Files.createDirectories(snapshotPath.getParent());
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not create directory for link snapshot.", e);
+            return;
+        }
+        try (var output = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temporaryPath))))
+        {
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeInt(cache.size() - unconfirmed.size());
+            for (Map.Entry<String, CachedLinks> entry : cache.entrySet())
+            {
+                if (unconfirmed.contains(entry.getKey()))
+                {
+                    continue;
+                }
+                var links = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeLong(links.lastModified());
+                output.writeInt(links.targets().size());
+                for (Map.Entry<String, Integer> target : links.targets().entrySet())
+                {
+                    output.writeUTF(target.getKey());
+                    output.writeInt(target.getValue());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not write link snapshot.", e);
+            return;
+        }
+        try
+        {
+            Files.move(temporaryPath, snapshotPath, REPLACE_EXISTING, ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Could not replace link snapshot.", e);
+        }
+    }
+
+    /// Registers tasks to run when the application shuts down.
+    @FunctionalInterface
+    interface ShutdownHooks
+    {
+        void register(Runnable hook);
+    }
+
+    private record CachedLinks(
+        long lastModified, Map<String, Integer> targets, CachedLinks previous)
+    {
+        CachedLinks latestOnly()
+        {
+            return previous == null ? this : new CachedLinks(lastModified, targets, null);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package nl.ulso.vmc.backlink;
+
+import java.util.Collection;
+import java.util.List;
+
+/// Keeps track of all internal links between documents in the vault.
+interface LinkRepository
+{
+    /// Returns a backlink for every document in the vault that links to the given document.
+    Collection<Backlink> backlinksTo(String documentName);
+
+    /// Returns the names of all documents that link to the given document, directly or indirectly,
+    /// grouped by distance. The first group holds the documents that link to the document directly,
+    /// the second group the documents that link to those, and so on, up to the maximum depth.
+    ///
+    /// Every document is reported once, at its shortest distance. The search stops after the
+    /// maximum number of documents has been visited. If the last group doesn't fit, it holds the
+    /// documents that come first in [DocumentNameOrder], so that the outcome is always the same.
+    List<List<String>> documentsLinkingTo(String documentName, int maximumDepth, int maximumVisits);
+}
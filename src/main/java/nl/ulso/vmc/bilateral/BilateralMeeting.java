@@ -0,0 +1,25 @@
+package nl.ulso.vmc.bilateral;
+
+import java.time.LocalDate;
+
+/// The most recent bilateral meeting with a counterpart.
+///
+/// Meetings are ordered by date, oldest first, and then by counterpart.
+///
+/// @param counterpart the counterpart met.
+/// @param date        date of the most recent meeting; see
+///                    [BilateralMeetingRepository#FALLBACK_NEVER].
+public record BilateralMeeting(Counterpart counterpart, LocalDate date)
+    implements Comparable<BilateralMeeting>
+{
+    @Override
+    public int compareTo(BilateralMeeting other)
+    {
+        var result = date.compareTo(other.date);
+        if (result != 0)
+        {
+            return result;
+        }
+        return counterpart.compareTo(other.counterpart);
+    }
+}
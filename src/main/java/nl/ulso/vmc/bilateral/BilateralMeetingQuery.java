@@ -11,9 +11,16 @@ import java.util.*;
 import static java.time.ZoneId.systemDefault;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.WEEKS;
-import static java.util.Collections.emptyMap;
+import static nl.ulso.curator.change.Change.Kind.CREATE;
+import static nl.ulso.curator.change.Change.Kind.DELETE;
 import static nl.ulso.vmc.bilateral.BilateralMeetingRepository.FALLBACK_NEVER;
 
+/// Query that outputs a table of bilateral meetings.
+///
+/// The query can be limited to the counterparts that are due for a meeting, or overdue. Each
+/// change to the most recent meeting with a counterpart comes in as a separate change, so a query
+/// is re-run only if a counterpart it shows, or should show, changed. A new day changes the status
+/// of all meetings, so then all queries are re-run.
 @Singleton
 final class BilateralMeetingQuery
     implements Query
@@ -26,6 +33,9 @@ final class BilateralMeetingQuery
     private static final String COLUMN_COUNTERPART = "Name";
     private static final String COLUMN_WHEN = "When";
     private static final String COLUMN_RECURRENCE = "Recurrence";
+    private static final String FILTER_ALL = "all";
+    private static final String FILTER_DUE = "due";
+    private static final String FILTER_OVERDUE = "overdue";
 
     private final BilateralMeetingRepository bilateralMeetingRepository;
     private final QueryResultFactory queryResultFactory;
@@ -58,34 +68,82 @@ final class BilateralMeetingQuery
     @Override
     public Map<String, String> supportedConfiguration()
     {
-        return emptyMap();
+        return Map.of(
+            "filter", "Meetings to include: '" + FILTER_ALL + "', '" + FILTER_DUE +
+                      "' (including overdue) or '" + FILTER_OVERDUE + "'; defaults to '" +
+                      FILTER_ALL + "'"
+        );
     }
 
     @Override
     public boolean isImpactedBy(Changelog changelog, QueryDefinition definition)
     {
-        return changelog.changesFor(BilateralRegistryUpdate.class).findFirst().isPresent()
-               || changelog.changesFor(NewDay.class).findFirst().isPresent();
+        if (changelog.changesFor(NewDay.class).findFirst().isPresent())
+        {
+            return true;
+        }
+        var filter = filterFor(definition);
+        var today = LocalDate.now(systemDefault());
+        return changelog.changesFor(BilateralMeeting.class).anyMatch(change ->
+            (change.kind() != CREATE && isSelected(change.oldValue(), filter, today))
+            || (change.kind() != DELETE && isSelected(change.newValue(), filter, today)));
     }
 
     @Override
     public QueryResult run(QueryDefinition definition)
     {
+        var filter = filterFor(definition);
+        if (!Set.of(FILTER_ALL, FILTER_DUE, FILTER_OVERDUE).contains(filter))
+        {
+            return queryResultFactory.error("Unsupported filter: " + filter);
+        }
+        var today = LocalDate.now(systemDefault());
         var meetings = bilateralMeetingRepository.resolveBilateralMeetings();
         var table = new ArrayList<Map<String, String>>(meetings.size());
-        meetings.forEach((counterpart, date) ->
+        for (BilateralMeeting meeting : meetings)
+        {
+            if (!isSelected(meeting, filter, today))
+            {
+                continue;
+            }
+            var counterpart = meeting.counterpart();
+            var date = meeting.date();
             table.add(Map.of(
                 COLUMN_DATE, date.equals(FALLBACK_NEVER) ? "N/A" : "[[" + date + "]]",
                 COLUMN_COUNTERPART, counterpart.link(),
                 COLUMN_WHEN, computeTimeAgo(date, counterpart.recurrenceInDays()),
                 COLUMN_RECURRENCE, computeRecurrence(counterpart.recurrenceInDays())
-            )));
+            ));
+        }
         return table.isEmpty()
                ? queryResultFactory.empty()
                : queryResultFactory.table(
                    List.of(COLUMN_DATE, COLUMN_COUNTERPART, COLUMN_WHEN, COLUMN_RECURRENCE), table);
     }
 
+    private String filterFor(QueryDefinition definition)
+    {
+        return definition.configuration().string("filter", FILTER_ALL).trim();
+    }
+
+    /// A counterpart that was never met has no date to be due or overdue against; it is listed as
+    /// "N/A", without a status. Such counterparts therefore only show up without a filter.
+    static boolean isSelected(BilateralMeeting meeting, String filter, LocalDate today)
+    {
+        if (meeting.date().equals(FALLBACK_NEVER))
+        {
+            return filter.equals(FILTER_ALL);
+        }
+        var recurrenceInDays = meeting.counterpart().recurrenceInDays();
+        var days = DAYS.between(meeting.date(), today);
+        return switch (filter)
+        {
+            case FILTER_DUE -> recurrenceInDays - days < 7;
+            case FILTER_OVERDUE -> days > recurrenceInDays;
+            default -> true;
+        };
+    }
+
     private String computeTimeAgo(LocalDate date, int recurrenceInDays)
     {
         if (date.equals(FALLBACK_NEVER))
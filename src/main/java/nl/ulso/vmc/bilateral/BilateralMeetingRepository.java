@@ -1,7 +1,7 @@
 package nl.ulso.vmc.bilateral;
 
 import java.time.LocalDate;
-import java.util.Map;
+import java.util.SortedSet;
 
 public interface BilateralMeetingRepository
 {
@@ -10,9 +10,9 @@ public interface BilateralMeetingRepository
     LocalDate FALLBACK_NEVER =
         LocalDate.of(1976, 11, 30);
 
-    /// Constructs a map of all bilateral meetings, with the counterpart as the key and the date of
-    /// the most recent meeting as the value. The map is sorted by date of meeting, oldest first.
+    /// Returns the most recent bilateral meeting with each counterpart, sorted by date of meeting,
+    /// oldest first. The result is a read-only view.
     ///
     /// If the date of a meeting is [#FALLBACK_NEVER], there has not been a meeting yet.
-    Map<Counterpart, LocalDate> resolveBilateralMeetings();
+    SortedSet<BilateralMeeting> resolveBilateralMeetings();
 }
@@ -5,67 +5,83 @@ import jakarta.inject.Singleton;
 import nl.ulso.curator.addon.journal.Daily;
 import nl.ulso.curator.addon.journal.Journal;
 import nl.ulso.curator.change.*;
+import nl.ulso.curator.vault.Document;
+import nl.ulso.vmc.journal.DailyLinkIndex;
 
 import java.time.LocalDate;
 import java.util.*;
 
-import static java.util.HashSet.newHashSet;
+import static java.util.Collections.emptySet;
 import static nl.ulso.curator.change.Change.isCreate;
 import static nl.ulso.curator.change.Change.isDelete;
 import static nl.ulso.curator.change.Change.isPayloadType;
 import static nl.ulso.curator.change.Change.isUpdate;
 import static nl.ulso.curator.change.ChangeHandler.newChangeHandler;
-import static nl.ulso.vmc.bilateral.BilateralRegistryUpdate.BILATERAL_REGISTRY_UPDATE;
+import static nl.ulso.vmc.journal.DailyLinkIndex.isDailyDocument;
 
 /// Keeps track of bilateral meetings in the journal for all counterparts.
 ///
 /// A bilateral meeting is recognized if a line in the daily starts with [#BILATERAL_PREFIX] and
 /// that same line links to a counterpart.
+///
+/// The counterparts met in a daily are found by intersecting the names the daily links to, from a
+/// [DailyLinkIndex], with the names of the counterparts. Only the lines for those counterparts are
+/// checked for the bilateral prefix.
+///
+/// Meetings are indexed both ways: from counterpart to the dates of the meetings, and from date to
+/// the counterparts met. Removing a daily then touches only the counterparts met on that date.
+///
+/// The most recent meeting with each counterpart is kept in a sorted set, which is updated
+/// whenever the date of that meeting changes. Resolving all meetings is then just a view on that
+/// set.
+///
+/// Every change to the most recent meeting with a counterpart is published as a change to a
+/// [BilateralMeeting], with the old and the new meeting. Changes to earlier meetings are not
+/// published, since they don't affect anything. Neither are edits to a counterpart that leave both
+/// the date of the meeting and the recurrence the same: those don't change any row.
 @Singleton
 final class DefaultBilateralMeetingRepository
     extends ChangeProcessorTemplate
     implements BilateralMeetingRepository
 {
-    private final CounterpartRepository counterpartRepository;
     private final Journal journal;
+    private final DailyLinkIndex dailyLinks;
     private final Map<String, SortedSet<LocalDate>> meetings;
+    private final Map<LocalDate, Set<String>> counterpartsByDate;
+    private final Map<String, BilateralMeeting> lastMeetings;
+    private final SortedSet<BilateralMeeting> sortedMeetings;
 
     @Inject
-    DefaultBilateralMeetingRepository(CounterpartRepository counterpartRepository, Journal journal)
+    DefaultBilateralMeetingRepository(Journal journal)
     {
-        this.counterpartRepository = counterpartRepository;
         this.journal = journal;
+        this.dailyLinks = new DailyLinkIndex();
         this.meetings = new HashMap<>();
+        this.counterpartsByDate = new HashMap<>();
+        this.lastMeetings = new HashMap<>();
+        this.sortedMeetings = new TreeSet<>();
     }
 
     @Override
     public Set<Class<?>> consumedPayloadTypes()
     {
-        return Set.of(Counterpart.class, Daily.class);
+        return Set.of(Counterpart.class, Daily.class, Document.class);
     }
 
     @Override
     public Set<Class<?>> producedPayloadTypes()
     {
-        return Set.of(BilateralRegistryUpdate.class);
-    }
-
-    @Override
-    public Set<Class<?>> requiredPayloadTypes()
-    {
-        return Set.of(CounterpartRepository.class);
-    }
-
-    @Override
-    public Collection<Change<?>> createChangeCollection()
-    {
-        return newHashSet(1);
+        return Set.of(BilateralMeeting.class);
     }
 
     @Override
     protected List<? extends ChangeHandler> createChangeHandlers()
     {
         return List.of(
+            newChangeHandler(
+                isDailyDocument(),
+                (change, _) -> dailyLinks.process(change)
+            ),
             newChangeHandler(
                 isPayloadType(Counterpart.class).and(isCreate()),
                 this::counterpartCreated
@@ -96,7 +112,11 @@ final class DefaultBilateralMeetingRepository
     @Override
     public void reset()
     {
+        dailyLinks.clear();
         meetings.clear();
+        counterpartsByDate.clear();
+        lastMeetings.clear();
+        sortedMeetings.clear();
     }
 
     private void counterpartCreated(Change<?> change, ChangeCollector collector)
@@ -107,79 +127,190 @@ final class DefaultBilateralMeetingRepository
         meetings.get(documentName).add(FALLBACK_NEVER);
         journal.dailiesFor(documentName).forEach(daily ->
         {
-            if (hasBilateralMeetingWith(counterpart, daily))
+            if (hasBilateralMeetingWith(documentName, daily))
             {
-                meetings.get(documentName).add(daily.date());
+                addMeeting(documentName, daily.date(), collector);
             }
         });
-        collector.add(BILATERAL_REGISTRY_UPDATE);
+        replaceLastMeeting(
+            documentName, new BilateralMeeting(counterpart, meetings.get(documentName).last()),
+            collector);
     }
 
     private void counterpartUpdated(Change<?> change, ChangeCollector collector)
     {
-        collector.add(BILATERAL_REGISTRY_UPDATE);
+        var counterpart = change.as(Counterpart.class).newValue();
+        var dates = meetings.get(counterpart.name());
+        if (dates != null)
+        {
+            replaceLastMeeting(
+                counterpart.name(), new BilateralMeeting(counterpart, dates.last()), collector);
+        }
     }
 
     private void counterpartDeleted(Change<?> change, ChangeCollector collector)
     {
-        meetings.remove(change.as(Counterpart.class).value().document().name());
-        collector.add(BILATERAL_REGISTRY_UPDATE);
+        var documentName = change.as(Counterpart.class).value().document().name();
+        var dates = meetings.remove(documentName);
+        if (dates != null)
+        {
+            dates.forEach(date -> removeFromDate(date, documentName));
+        }
+        replaceLastMeeting(documentName, null, collector);
     }
 
     private void dailyCreated(Change<?> change, ChangeCollector collector)
     {
         var daily = change.as(Daily.class).value();
-        counterpartRepository.counterparts().forEach(counterpart ->
+        counterpartsMetIn(daily).forEach(name -> addMeeting(name, daily.date(), collector));
+    }
+
+    /// Compares the counterparts met according to the new daily with those met on the same date
+    /// before, and changes only the difference. Most edits to a daily don't touch any bilateral
+    /// meeting, and then nothing changes.
+    private void dailyUpdated(Change<?> change, ChangeCollector collector)
+    {
+        var daily = change.as(Daily.class).newValue();
+        var date = daily.date();
+        var newNames = counterpartsMetIn(daily);
+        var oldNames = Set.copyOf(counterpartsByDate.getOrDefault(date, emptySet()));
+        for (String name : oldNames)
         {
-            if (hasBilateralMeetingWith(counterpart, daily))
+            if (!newNames.contains(name))
             {
-                meetings.get(counterpart.name()).add(daily.date());
+                meetings.get(name).remove(date);
+                removeFromDate(date, name);
+                refreshLastMeeting(name, collector);
             }
-        });
-        collector.add(BILATERAL_REGISTRY_UPDATE);
+        }
+        for (String name : newNames)
+        {
+            if (!oldNames.contains(name))
+            {
+                addMeeting(name, date, collector);
+            }
+        }
     }
 
-    private void dailyUpdated(Change<?> change, ChangeCollector collector)
+    private void dailyDeleted(Change<?> change, ChangeCollector collector)
     {
-        dailyDeleted(change, collector);
-        dailyCreated(change, collector);
+        var date = change.as(Daily.class).value().date();
+        var counterpartNames = counterpartsByDate.remove(date);
+        if (counterpartNames != null)
+        {
+            counterpartNames.forEach(name ->
+            {
+                meetings.get(name).remove(date);
+                refreshLastMeeting(name, collector);
+            });
+        }
     }
 
-    private void dailyDeleted(Change<?> change, ChangeCollector collector)
+    private void addMeeting(String counterpartName, LocalDate date, ChangeCollector collector)
     {
-        meetings.forEach((_, dates) ->
-            dates.remove(change.as(Daily.class).value().date()));
-        collector.add(BILATERAL_REGISTRY_UPDATE);
+        meetings.get(counterpartName).add(date);
+        counterpartsByDate.computeIfAbsent(date, _ -> new HashSet<>()).add(counterpartName);
+        refreshLastMeeting(counterpartName, collector);
     }
 
-    private boolean hasBilateralMeetingWith(Counterpart counterpart, Daily daily)
+    /// Brings the most recent meeting with the counterpart in line with its dates, if it is
+    /// tracked already; a counterpart that is being created gets its meeting at the end.
+    private void refreshLastMeeting(String counterpartName, ChangeCollector collector)
     {
-        return daily.refersTo(counterpart.name())
-               && daily.linesFor(counterpart.name()).stream()
-                   .anyMatch(line -> line.startsWith(BILATERAL_PREFIX));
+        var meeting = lastMeetings.get(counterpartName);
+        if (meeting == null)
+        {
+            return;
+        }
+        var date = meetings.get(counterpartName).last();
+        if (!date.equals(meeting.date()))
+        {
+            replaceLastMeeting(
+                counterpartName, new BilateralMeeting(meeting.counterpart(), date), collector);
+        }
     }
 
-    @Override
-    public Map<Counterpart, LocalDate> resolveBilateralMeetings()
+    /// Replaces the most recent meeting with a counterpart, and publishes the change.
+    ///
+    /// @param meeting the new meeting, or `null` if the counterpart is gone.
+    private void replaceLastMeeting(
+        String counterpartName, BilateralMeeting meeting, ChangeCollector collector)
+    {
+        var previous = meeting != null
+                       ? lastMeetings.put(counterpartName, meeting)
+                       : lastMeetings.remove(counterpartName);
+        if (previous != null)
+        {
+            sortedMeetings.remove(previous);
+        }
+        if (meeting != null)
+        {
+            sortedMeetings.add(meeting);
+        }
+        if (previous == null && meeting != null)
+        {
+            collector.create(meeting, BilateralMeeting.class);
+        }
+        else if (previous != null && meeting == null)
+        {
+            collector.delete(previous, BilateralMeeting.class);
+        }
+        else if (previous != null && isChanged(previous, meeting))
+        {
+            collector.update(previous, meeting, BilateralMeeting.class);
+        }
+    }
+
+    private static boolean isChanged(BilateralMeeting previous, BilateralMeeting meeting)
     {
-        var counterparts = counterpartRepository.counterparts();
-        var result = HashMap.<Counterpart, LocalDate>newHashMap(counterparts.size());
-        counterparts.forEach(counterpart ->
-            result.put(counterpart, meetings.get(counterpart.name()).last()));
-        return sortBilateralMeetings(result);
+        return !previous.date().equals(meeting.date())
+               || previous.counterpart().recurrenceInDays()
+                  != meeting.counterpart().recurrenceInDays();
     }
 
-    public static Map<Counterpart, LocalDate> sortBilateralMeetings(Map<Counterpart, LocalDate> map)
+    private void removeFromDate(LocalDate date, String counterpartName)
     {
-        var entries = new ArrayList<>(map.entrySet());
-        entries.sort(
-            Map.Entry.<Counterpart, LocalDate>comparingByValue()
-                .thenComparing(Map.Entry.comparingByKey()));
-        var result = new LinkedHashMap<Counterpart, LocalDate>(map.size());
-        for (var entry : entries)
+        var counterpartNames = counterpartsByDate.get(date);
+        if (counterpartNames != null)
         {
-            result.put(entry.getKey(), entry.getValue());
+            counterpartNames.remove(counterpartName);
+            if (counterpartNames.isEmpty())
+            {
+                counterpartsByDate.remove(date);
+            }
+        }
+    }
+
+    /// Finds the counterparts the daily has a bilateral meeting with, by looking up the names the
+    /// daily links to in the names of the counterparts. Only if the document of the daily was never
+    /// seen, which should not happen, are all counterparts checked instead.
+    ///
+    /// @return the names of the counterparts met.
+    private Set<String> counterpartsMetIn(Daily daily)
+    {
+        var linkTargets = dailyLinks.linkTargetsOn(daily.date());
+        var candidates = linkTargets.isPresent() ? linkTargets.get() : meetings.keySet();
+        var result = new HashSet<String>();
+        for (String name : candidates)
+        {
+            if (meetings.containsKey(name) && hasBilateralMeetingWith(name, daily))
+            {
+                result.add(name);
+            }
         }
         return result;
     }
+
+    private boolean hasBilateralMeetingWith(String counterpartName, Daily daily)
+    {
+        return daily.refersTo(counterpartName)
+               && daily.linesFor(counterpartName).stream()
+                   .anyMatch(line -> line.startsWith(BILATERAL_PREFIX));
+    }
+
+    @Override
+    public SortedSet<BilateralMeeting> resolveBilateralMeetings()
+    {
+        return Collections.unmodifiableSortedSet(sortedMeetings);
+    }
 }
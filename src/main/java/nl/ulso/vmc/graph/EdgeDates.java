@@ -0,0 +1,101 @@
+package nl.ulso.vmc.graph;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/// Operations on the data stored on edges between two nodes.
+///
+/// The data stored for each edge consists of the dates in the journal the edge definition was
+/// found in. This is needed to be able to update the graph efficiently while changes to the
+/// underlying repository happen.
+///
+/// Dates are stored as a sorted array of epoch days. Arrays are never changed in place: every
+/// operation that changes the dates returns a new array. That allows both nodes of an edge to share
+/// the same array. An edge that has no dates associated with it is invalid, and should be removed
+/// from the graph.
+final class EdgeDates
+{
+    static final int[] NO_DATES = new int[0];
+
+    private EdgeDates()
+    {
+    }
+
+    /// @return the dates with the given date added; the same array if the date was already in it.
+    static int[] withDate(int[] dates, LocalDate date)
+    {
+        var day = epochDayOf(date);
+        var position = Arrays.binarySearch(dates, day);
+        if (position >= 0)
+        {
+            return dates;
+        }
+        position = -position - 1;
+        var result = new int[dates.length + 1];
+        System.arraycopy(dates, 0, result, 0, position);
+        result[position] = day;
+        System.arraycopy(dates, position, result, position + 1, dates.length - position);
+        return result;
+    }
+
+    /// @return the dates with the given date removed; the same array if the date wasn't in it.
+    static int[] withoutDate(int[] dates, LocalDate date)
+    {
+        var position = Arrays.binarySearch(dates, epochDayOf(date));
+        if (position < 0)
+        {
+            return dates;
+        }
+        if (dates.length == 1)
+        {
+            return NO_DATES;
+        }
+        var result = new int[dates.length - 1];
+        System.arraycopy(dates, 0, result, 0, position);
+        System.arraycopy(dates, position + 1, result, position, result.length - position);
+        return result;
+    }
+
+    /// @return `true` if at least one of the dates is within the range, bounds included.
+    static boolean hasDateBetween(int[] dates, int fromEpochDay, int toEpochDay)
+    {
+        var position = Arrays.binarySearch(dates, fromEpochDay);
+        if (position >= 0)
+        {
+            return true;
+        }
+        position = -position - 1;
+        return position < dates.length && dates[position] <= toEpochDay;
+    }
+
+    /// @return the number of dates within the range, bounds included.
+    static int countBetween(int[] dates, int fromEpochDay, int toEpochDay)
+    {
+        if (fromEpochDay > toEpochDay)
+        {
+            return 0;
+        }
+        return insertionPointOf(dates, toEpochDay + 1L) - insertionPointOf(dates, fromEpochDay);
+    }
+
+    /// @return the position of the first date on or after the given day.
+    private static int insertionPointOf(int[] dates, long epochDay)
+    {
+        if (epochDay > Integer.MAX_VALUE)
+        {
+            return dates.length;
+        }
+        var position = Arrays.binarySearch(dates, (int) epochDay);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    static int epochDayOf(LocalDate date)
+    {
+        return (int) date.toEpochDay();
+    }
+
+    static LocalDate dateOf(int epochDay)
+    {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -0,0 +1,181 @@
+package nl.ulso.vmc.graph;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import nl.ulso.curator.change.Changelog;
+import nl.ulso.curator.query.*;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/// Query to export the complete graph to a file in the vault, in DOT or GraphML format; see
+/// [GraphFormat].
+///
+/// Exports are written to a dedicated folder in the vault, which is created when needed, so that
+/// they never clutter its root or end up between notes.
+///
+/// The graph in Mermaid is meant for notes; it is always limited to the neighbourhood of a single
+/// node. The export holds all nodes and edges, for analysis in external tools.
+///
+/// The file is rewritten only if its content changed. The query keeps a hash of the content of
+/// each file it wrote; the first time around it compares with the file on disk instead. The query
+/// is impacted only by changes to the graph.
+@Singleton
+public final class GraphExportQuery
+    implements Query
+{
+    private static final Logger LOGGER = getLogger(GraphExportQuery.class);
+    private static final String EXPORT_FOLDER_NAME = "exports";
+    private static final String DEFAULT_FILE_NAME = "graph.dot";
+
+    private final MermaidGraph graph;
+    private final Path exportFolderPath;
+    private final QueryResultFactory resultFactory;
+    private final Map<Path, Export> exports;
+
+    @Inject
+    public GraphExportQuery(
+        MermaidGraph mermaidGraph, Path vaultPath, QueryResultFactory resultFactory)
+    {
+        this.graph = mermaidGraph;
+        this.exportFolderPath = vaultPath.toAbsolutePath().normalize().resolve(EXPORT_FOLDER_NAME);
+        this.resultFactory = resultFactory;
+        this.exports = new HashMap<>();
+    }
+
+    @Override
+    public String name()
+    {
+        return "graphexport";
+    }
+
+    @Override
+    public String description()
+    {
+        return "exports the complete graph to a file, in DOT or GraphML format";
+    }
+
+    @Override
+    public Map<String, String> supportedConfiguration()
+    {
+        return Map.of(
+            "file", "File in the '" + EXPORT_FOLDER_NAME + "' folder to export to, ending in .dot"
+                    + " or .graphml; defaults to " + DEFAULT_FILE_NAME
+        );
+    }
+
+    @Override
+    public boolean isImpactedBy(Changelog changelog, QueryDefinition definition)
+    {
+        synchronized (exports)
+        {
+            var export = exports.get(exportPathFor(definition));
+            return export == null || export.version() != graph.version();
+        }
+    }
+
+    @Override
+    public QueryResult run(QueryDefinition definition)
+    {
+        var fileName = fileNameFor(definition);
+        var format = GraphFormat.forFileName(fileName);
+        if (format.isEmpty())
+        {
+            return resultFactory.error("Unsupported file type: " + fileName);
+        }
+        var path = exportPathFor(definition);
+        if (!path.startsWith(exportFolderPath) || path.equals(exportFolderPath))
+        {
+            return resultFactory.error(
+                "File must be inside the '" + EXPORT_FOLDER_NAME + "' folder: " + fileName);
+        }
+        synchronized (exports)
+        {
+            var version = graph.version();
+            var nodes = graph.nodes();
+            var content = format.get().render(nodes);
+            var hash = hashOf(content);
+            var export = exports.get(path);
+            var previousHash = export != null ? export.hash() : hashOfFile(path);
+            if (!hash.equals(previousHash))
+            {
+                try
+                {
+                    write(path, content);
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Could not export graph to {}.", path, e);
+                    return resultFactory.error("Could not export graph to " + fileName);
+                }
+            }
+            exports.put(path, new Export(version, hash));
+            return resultFactory.string(
+                "Graph with " + nodes.size() + " nodes exported to `" + EXPORT_FOLDER_NAME + "/"
+                + fileName + "`.\n");
+        }
+    }
+
+    private String fileNameFor(QueryDefinition definition)
+    {
+        return definition.configuration().string("file", DEFAULT_FILE_NAME);
+    }
+
+    private Path exportPathFor(QueryDefinition definition)
+    {
+        return exportFolderPath.resolve(fileNameFor(definition)).normalize();
+    }
+
+    private void write(Path path, String content)
+        throws IOException
+    {
+        Files.createDirectories(path.getParent());
+        var temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.writeString(temporaryPath, content, UTF_8);
+        Files.move(temporaryPath, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        LOGGER.debug("Exported graph to {}.", path);
+    }
+
+    private static String hashOfFile(Path path)
+    {
+        if (!Files.isRegularFile(path))
+        {
+            return null;
+        }
+        try
+        {
+            return hashOf(Files.readString(path, UTF_8));
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static String hashOf(String content)
+    {
+        try
+        {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private record Export(long version, String hash) {}
+}
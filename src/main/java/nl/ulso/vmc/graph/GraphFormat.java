@@ -0,0 +1,147 @@
+package nl.ulso.vmc.graph;
+
+import java.util.*;
+
+import static java.util.Comparator.comparing;
+import static nl.ulso.vmc.graph.EdgeDates.dateOf;
+
+/// File formats the complete graph can be exported to, for analysis in external tools.
+///
+/// Exports include the type of each node and whether it is archived, and for each edge its weight
+/// (the number of distinct journal dates behind it) and those dates. Nodes are identified by
+/// document name. Nodes and edges are written in order of document name, so that the same graph
+/// always results in the same file.
+enum GraphFormat
+{
+    DOT(".dot")
+        {
+            @Override
+            void writeTo(StringBuilder builder, List<Node> nodes)
+            {
+                builder.append("graph vault {\n");
+                for (Node node : nodes)
+                {
+                    builder.append("    ").append(quoted(node.document().name()))
+                        .append(" [type=").append(quoted(node.nodeType().typeName()))
+                        .append(", archived=").append(node.isArchived())
+                        .append("];\n");
+                }
+                forEachEdge(nodes, (source, target, dates) ->
+                    builder.append("    ").append(quoted(source.document().name()))
+                        .append(" -- ").append(quoted(target.document().name()))
+                        .append(" [weight=").append(dates.length)
+                        .append(", dates=").append(quoted(datesOf(dates)))
+                        .append("];\n"));
+                builder.append("}\n");
+            }
+
+            private static String quoted(String value)
+            {
+                return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            }
+        },
+
+    GRAPHML(".graphml")
+        {
+            @Override
+            void writeTo(StringBuilder builder, List<Node> nodes)
+            {
+                builder.append("""
+                    <?xml version="1.0" encoding="UTF-8"?>
+                    <graphml xmlns="http://graphml.graphdrawing.org/xmlns">
+                      <key id="type" for="node" attr.name="type" attr.type="string"/>
+                      <key id="archived" for="node" attr.name="archived" attr.type="boolean"/>
+                      <key id="weight" for="edge" attr.name="weight" attr.type="int"/>
+                      <key id="dates" for="edge" attr.name="dates" attr.type="string"/>
+                      <graph id="vault" edgedefault="undirected">
+                    """);
+                for (Node node : nodes)
+                {
+                    builder.append("    <node id=\"").append(escaped(node.document().name()))
+                        .append("\"><data key=\"type\">")
+                        .append(escaped(node.nodeType().typeName()))
+                        .append("</data><data key=\"archived\">").append(node.isArchived())
+                        .append("</data></node>\n");
+                }
+                forEachEdge(nodes, (source, target, dates) ->
+                    builder.append("    <edge source=\"").append(escaped(source.document().name()))
+                        .append("\" target=\"").append(escaped(target.document().name()))
+                        .append("\"><data key=\"weight\">").append(dates.length)
+                        .append("</data><data key=\"dates\">").append(datesOf(dates))
+                        .append("</data></edge>\n"));
+                builder.append("  </graph>\n</graphml>\n");
+            }
+
+            private static String escaped(String value)
+            {
+                return value.replace("&", "&amp;")
+                    .replace("<", "&lt;")
+                    .replace(">", "&gt;")
+                    .replace("\"", "&quot;");
+            }
+        };
+
+    private final String extension;
+
+    GraphFormat(String extension)
+    {
+        this.extension = extension;
+    }
+
+    /// @return the format that matches the extension of the file name, if any.
+    static Optional<GraphFormat> forFileName(String fileName)
+    {
+        var lowerCaseName = fileName.toLowerCase(Locale.ROOT);
+        return Arrays.stream(values())
+            .filter(format -> lowerCaseName.endsWith(format.extension))
+            .findFirst();
+    }
+
+    String render(Collection<Node> nodes)
+    {
+        var sortedNodes = new ArrayList<>(nodes);
+        sortedNodes.sort(comparing(node -> node.document().name()));
+        var builder = new StringBuilder();
+        writeTo(builder, sortedNodes);
+        return builder.toString();
+    }
+
+    abstract void writeTo(StringBuilder builder, List<Node> nodes);
+
+    /// Passes each edge once, from the node with the lowest name, in order of the names of the
+    /// nodes on the other side.
+    private static void forEachEdge(List<Node> nodes, EdgeConsumer consumer)
+    {
+        var edges = new TreeMap<String, Map.Entry<Node, int[]>>();
+        for (Node source : nodes)
+        {
+            var sourceName = source.document().name();
+            source.forEachEdge((target, dates) ->
+            {
+                var targetName = target.document().name();
+                if (sourceName.compareTo(targetName) < 0)
+                {
+                    edges.put(targetName, Map.entry(target, dates));
+                }
+            });
+            edges.values().forEach(edge -> consumer.accept(source, edge.getKey(), edge.getValue()));
+            edges.clear();
+        }
+    }
+
+    private static String datesOf(int[] dates)
+    {
+        var joiner = new StringJoiner(",");
+        for (int epochDay : dates)
+        {
+            joiner.add(dateOf(epochDay).toString());
+        }
+        return joiner.toString();
+    }
+
+    @FunctionalInterface
+    private interface EdgeConsumer
+    {
+        void accept(Node source, Node target, int[] dates);
+    }
+}
@@ -0,0 +1,26 @@
+package nl.ulso.vmc.graph;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/// Request for a graph: what to render, starting from which document.
+///
+/// Requests are values; they are used as keys in the [RenderedGraphCache].
+///
+/// @param seedDocumentName  name of the document to start with.
+/// @param maximumDepth      maximum depth to go, as counted from the seed node.
+/// @param excludedTypeNames names of the node types to exclude from the graph.
+/// @param maximumNodes      maximum number of nodes to render.
+/// @param maximumEdges      maximum number of edges to render.
+/// @param from              first date of the window edges must have a date in, or `null`.
+/// @param to                last date of the window edges must have a date in, or `null`.
+/// @param maximumNeighbours maximum number of neighbours to follow from each node.
+public record GraphRequest(
+    String seedDocumentName, int maximumDepth, Set<String> excludedTypeNames,
+    int maximumNodes, int maximumEdges, LocalDate from, LocalDate to, int maximumNeighbours)
+{
+    public GraphRequest
+    {
+        excludedTypeNames = Set.copyOf(excludedTypeNames);
+    }
+}
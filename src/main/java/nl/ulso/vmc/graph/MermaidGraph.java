@@ -5,17 +5,25 @@ import jakarta.inject.Singleton;
 import nl.ulso.curator.addon.journal.*;
 import nl.ulso.curator.change.*;
 import nl.ulso.curator.vault.*;
+import nl.ulso.vmc.journal.DailyLinkIndex;
 import org.slf4j.Logger;
 
 import java.time.LocalDate;
 import java.util.*;
 import java.util.function.Predicate;
 
-import static java.util.stream.Collectors.joining;
+import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.toSet;
+import static nl.ulso.curator.change.Change.Kind.DELETE;
+import static nl.ulso.curator.change.Change.isCreate;
+import static nl.ulso.curator.change.Change.isDelete;
 import static nl.ulso.curator.change.Change.isPayloadType;
+import static nl.ulso.curator.change.Change.isUpdate;
 import static nl.ulso.curator.change.ChangeHandler.newChangeHandler;
 import static nl.ulso.curator.vault.InternalLinkFinder.extractInternalLinkTargetNamesFrom;
+import static nl.ulso.vmc.graph.EdgeDates.dateOf;
+import static nl.ulso.vmc.graph.EdgeDates.epochDayOf;
+import static nl.ulso.vmc.journal.DailyLinkIndex.isDailyDocument;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /// Builds a graph from notes in the repository.
@@ -42,8 +50,26 @@ import static org.slf4j.LoggerFactory.getLogger;
 /// Nodes that are in a subfolder of the type folder are considered to be archived. They are
 /// rendered differently.
 ///
-/// TODO: rewrite this class using the new primitives, without a reset().
-/// TODO: for now this module is disabled; I need to completely rebuild it first.
+/// The graph is maintained incrementally, from the changes as they come in:
+///
+/// - A new document of a known type becomes a node. Its edges are pulled from the journal, for
+///   that document only. Since edges are bidirectional, that also connects the existing nodes it
+///   relates to.
+/// - An updated document replaces the document in its node.
+/// - A deleted document is removed from the graph, together with its edges, from both sides.
+/// - A change to a daily replaces the edges for that date. The edges each date contributed are
+///   kept in an index, so that only those need to be removed. The names the daily links to are
+///   kept in a [DailyLinkIndex]; only the nodes among those are looked up in the journal to add
+///   edges back in. The work is proportional to the links in the daily, not to the size of the
+///   graph.
+/// - A change to the set of markers to include in the graph rebuilds all edges, since every marked
+///   line might be affected. Marker changes are rare.
+///
+/// A change to an input of a node classifier forgets the memoized rendering of the nodes the
+/// classifier says are affected.
+///
+/// Rendered graphs are kept in a [RenderedGraphCache]. Every change above invalidates only the
+/// cached graphs that visited one of the nodes involved.
 @Singleton
 public class MermaidGraph
     extends ChangeProcessorTemplate
@@ -51,12 +77,24 @@ public class MermaidGraph
     private static final Logger LOGGER = getLogger(MermaidGraph.class);
 
     private static final String MARKER_PROPERTY_INCLUDE_IN_GRAPH = "include-in-graph";
+    private static final String TRUNCATION_MARKER_ID = "truncated";
+    // Rough sizes of the output, to size the buffer up front; it grows if needed.
+    private static final int ESTIMATED_HEADER_LENGTH = 512;
+    private static final int ESTIMATED_NODE_LENGTH = 96;
+    private static final int ESTIMATED_EDGE_LENGTH = 24;
+    private static final int MAXIMUM_INITIAL_CAPACITY = 1 << 16;
 
     private final Vault vault;
     private final Journal journal;
     private final MermaidGraphSettings settings;
     private final Set<String> selectedMarkerNames;
     private final Map<String, Node> nodes;
+    private final NodeTable nodeTable;
+    private final Map<LocalDate, Set<Edge>> edgesByDate;
+    private final DailyLinkIndex dailyLinks;
+    private final RenderedGraphCache renderedGraphs;
+    private final Set<Class<?>> classifierInputPayloadTypes;
+    private volatile long version;
 
     @Inject
     MermaidGraph(Vault vault, Journal journal, MermaidGraphSettings settings)
@@ -66,21 +104,41 @@ public class MermaidGraph
         this.settings = settings;
         this.selectedMarkerNames = new HashSet<>();
         this.nodes = new HashMap<>();
+        this.nodeTable = new NodeTable();
+        this.edgesByDate = new HashMap<>();
+        this.dailyLinks = new DailyLinkIndex();
+        this.renderedGraphs = new RenderedGraphCache();
+        this.classifierInputPayloadTypes = settings.nodeTypes().stream()
+            .flatMap(type -> type.classifier().inputPayloadTypes().stream())
+            .collect(toSet());
     }
 
     @Override
     protected List<? extends ChangeHandler> createChangeHandlers()
     {
         return List.of(
+            newChangeHandler(isPayloadType(Marker.class), this::processMarkerUpdate),
             newChangeHandler(isPayloadType(Daily.class), this::processDailyUpdate),
-            newChangeHandler(isNodeEntry(), this::processNodeUpdate)
+            newChangeHandler(isNodeEntry().and(isCreate()), this::processNodeCreation),
+            newChangeHandler(isNodeEntry().and(isUpdate()), this::processNodeUpdate),
+            newChangeHandler(isNodeEntry().and(isDelete()), this::processNodeDeletion),
+            newChangeHandler(isClassifierInput(), this::processClassifierInputChange),
+            newChangeHandler(isDailyDocument(), (change, _) -> dailyLinks.process(change))
         );
     }
 
     @Override
     public Set<Class<?>> consumedPayloadTypes()
     {
-        return Set.of(Document.class, Marker.class, Daily.class);
+        var payloadTypes = new HashSet<>(classifierInputPayloadTypes);
+        payloadTypes.addAll(Set.of(Document.class, Marker.class, Daily.class));
+        return payloadTypes;
+    }
+
+    private Predicate<Change<?>> isClassifierInput()
+    {
+        return change -> classifierInputPayloadTypes.stream()
+            .anyMatch(payloadType -> isPayloadType(payloadType).test(change));
     }
 
     Predicate<Change<?>> isNodeEntry()
@@ -95,82 +153,233 @@ public class MermaidGraph
     @Override
     public void reset()
     {
+        nodes.clear();
+        nodeTable.clear();
+        edgesByDate.clear();
+        dailyLinks.clear();
+        renderedGraphs.clear();
         refreshSelectedMarkers();
-        refreshNodes();
-        refreshEdges();
-        LOGGER.debug("Constructed a graph with {} nodes", nodes.size());
+        version++;
+    }
+
+    private void processMarkerUpdate(Change<?> change, ChangeCollector collector)
+    {
+        if (refreshSelectedMarkers())
+        {
+            nodes.values().forEach(Node::removeAllEdges);
+            edgesByDate.clear();
+            renderedGraphs.clear();
+            refreshEdges();
+            version++;
+            LOGGER.debug("Rebuilt all edges in the graph after a change in markers.");
+        }
     }
 
     private void processDailyUpdate(Change<?> change, ChangeCollector collector)
     {
         var daily = (Daily) change.value();
-        refreshGraphForJournalEntryOn(daily.date());
+        refreshGraphForJournalEntryOn(daily, change.kind() != DELETE);
+        version++;
+    }
+
+    private void processNodeCreation(Change<?> change, ChangeCollector collector)
+    {
+        var document = change.as(Document.class).newValue();
+        var type = nodeTypeFor(document).orElseThrow();
+        var node = nodeTable.newNode(document, type, isArchived(document, type));
+        nodes.put(document.name(), node);
+        processMarkedLines(
+            journal.markedLinesFor(document.name(), selectedMarkerNames),
+            node
+        );
+        node.forEachEdge((targetNode, _) ->
+            renderedGraphs.invalidate(targetNode.document().name()));
+        version++;
     }
 
     private void processNodeUpdate(Change<?> change, ChangeCollector collector)
     {
-        var document = (Document) change.value();
-        var name = document.name();
-        var node = nodes.get(name);
+        var document = change.as(Document.class).newValue();
+        var node = nodes.get(document.name());
         if (node != null)
         {
-            // A node already exists. All we need to do is replace the underlying document
-            // reference.
-            node.replaceDocumentWith(document);
+            node.replaceDocumentWith(document, isArchived(document, node.nodeType()));
+            renderedGraphs.invalidate(document.name());
+            version++;
         }
-        else
+    }
+
+    private void processNodeDeletion(Change<?> change, ChangeCollector collector)
+    {
+        var node = nodes.remove(change.as(Document.class).oldValue().name());
+        if (node != null)
         {
-            // This is a new node. It might refer to other nodes already, and other nodes
-            // might refer to it. So, a full refresh is all we can do.
-            //            reset();
+            renderedGraphs.invalidate(node.document().name());
+            node.forEachEdge((targetNode, dates) ->
+            {
+                renderedGraphs.invalidate(targetNode.document().name());
+                for (int epochDay : dates)
+                {
+                    unindexEdge(dateOf(epochDay), node, targetNode);
+                }
+            });
+            node.removeAllEdges();
+            nodeTable.remove(node);
+            version++;
         }
     }
 
-    private boolean isNodeEntry(Document document)
+    private void processClassifierInputChange(Change<?> change, ChangeCollector collector)
     {
-        var folder = document.folder();
-        while (folder != vault)
+        for (Type type : settings.nodeTypes())
         {
-            if (settings.folderNames().contains(folder.name()))
+            var classifier = type.classifier();
+            var isInput = classifier.inputPayloadTypes().stream()
+                .anyMatch(payloadType -> isPayloadType(payloadType).test(change));
+            if (!isInput)
+            {
+                continue;
+            }
+            for (String documentName : classifier.affectedDocumentNames(change))
             {
-                return true;
+                var node = nodes.get(documentName);
+                if (node != null && node.nodeType().equals(type))
+                {
+                    node.forgetMermaidNode();
+                    renderedGraphs.invalidate(documentName);
+                }
             }
+        }
+    }
+
+    private boolean isNodeEntry(Document document)
+    {
+        return nodeTypeFor(document).isPresent();
+    }
+
+    /// Finds the type of node for a document, by looking up the folder directly under the root of
+    /// the vault the document is in.
+    private Optional<Type> nodeTypeFor(Document document)
+    {
+        var folder = topLevelFolderOf(document);
+        if (folder == null)
+        {
+            return Optional.empty();
+        }
+        return settings.nodeTypes().stream()
+            .filter(type -> type.folderName().contentEquals(folder.name()))
+            .findFirst();
+    }
+
+    private boolean isArchived(Document document, Type type)
+    {
+        return !document.folder().name().contentEquals(type.folderName());
+    }
+
+    private Folder topLevelFolderOf(Document document)
+    {
+        var folder = document.folder();
+        if (folder == vault)
+        {
+            return null;
+        }
+        while (folder.parent() != vault)
+        {
             folder = folder.parent();
         }
-        return false;
+        return folder;
     }
 
-    private void refreshGraphForJournalEntryOn(LocalDate date)
+    private void refreshGraphForJournalEntryOn(Daily daily, boolean isPresent)
     {
-        // First remove all edges from the graph for the given date
-        nodes.values().forEach(node -> node.removeEdgesFor(date));
+        var date = daily.date();
+        // First remove all edges from the graph the date contributed
+        var oldEdges = edgesByDate.remove(date);
+        if (oldEdges != null)
+        {
+            for (Edge edge : oldEdges)
+            {
+                var sourceNode = nodes.get(edge.sourceName());
+                var targetNode = nodes.get(edge.targetName());
+                if (sourceNode != null && targetNode != null)
+                {
+                    sourceNode.removeEdgeDate(targetNode, date);
+                }
+            }
+        }
         // Then add them back in. These might be completely different!
-        nodes.values().forEach(node -> processMarkedLines(
-            journal.markedLinesFor(node.document().name(), selectedMarkerNames, date),
-            node
-        ));
+        if (isPresent)
+        {
+            var linkTargets = dailyLinks.linkTargetsOn(date);
+            var names = linkTargets.isPresent() ? linkTargets.get() : nodes.keySet();
+            for (String name : names)
+            {
+                var node = nodes.get(name);
+                if (node != null && daily.refersTo(name))
+                {
+                    processMarkedLines(
+                        journal.markedLinesFor(name, selectedMarkerNames, date),
+                        node
+                    );
+                }
+            }
+        }
+        // Only the edges that actually changed affect rendered graphs
+        var newEdges = edgesByDate.getOrDefault(date, emptySet());
+        invalidateChangedEdges(oldEdges != null ? oldEdges : emptySet(), newEdges);
     }
 
-    private void refreshSelectedMarkers()
+    private void invalidateChangedEdges(Set<Edge> oldEdges, Set<Edge> newEdges)
     {
-        selectedMarkerNames.clear();
-        selectedMarkerNames.addAll(
-            journal.markers().values().stream()
-                .filter(marker ->
-                    marker.settings().bool(MARKER_PROPERTY_INCLUDE_IN_GRAPH, false))
-                .map(Marker::name)
-                .collect(toSet())
-        );
+        for (Edge edge : oldEdges)
+        {
+            if (!newEdges.contains(edge))
+            {
+                renderedGraphs.invalidate(edge.sourceName());
+                renderedGraphs.invalidate(edge.targetName());
+            }
+        }
+        for (Edge edge : newEdges)
+        {
+            if (!oldEdges.contains(edge))
+            {
+                renderedGraphs.invalidate(edge.sourceName());
+                renderedGraphs.invalidate(edge.targetName());
+            }
+        }
     }
 
-    private void refreshNodes()
+    private void unindexEdge(LocalDate date, Node sourceNode, Node targetNode)
     {
-        nodes.clear();
-        for (Type type : settings.nodeTypes())
+        var edges = edgesByDate.get(date);
+        if (edges != null)
+        {
+            var sourceName = sourceNode.document().name();
+            var targetName = targetNode.document().name();
+            edges.remove(new Edge(sourceName, targetName));
+            edges.remove(new Edge(targetName, sourceName));
+            if (edges.isEmpty())
+            {
+                edgesByDate.remove(date);
+            }
+        }
+    }
+
+    /// @return `true` if the set of selected markers changed, `false` otherwise.
+    private boolean refreshSelectedMarkers()
+    {
+        var markerNames = journal.markers().values().stream()
+            .filter(marker ->
+                marker.settings().bool(MARKER_PROPERTY_INCLUDE_IN_GRAPH, false))
+            .map(Marker::name)
+            .collect(toSet());
+        if (markerNames.equals(selectedMarkerNames))
         {
-            var nodeFinder = new NodeFinder(type);
-            vault.folder(type.folderName()).ifPresent(folder -> folder.accept(nodeFinder));
+            return false;
         }
+        selectedMarkerNames.clear();
+        selectedMarkerNames.addAll(markerNames);
+        return true;
     }
 
     private void refreshEdges()
@@ -199,38 +408,89 @@ public class MermaidGraph
                     {
                         continue;
                     }
+                    if (targetNode == sourceNode)
+                    {
+                        continue;
+                    }
                     var date = markedLine.date();
                     sourceNode.addEdge(targetNode, date);
-                    targetNode.addEdge(sourceNode, date);
+                    edgesByDate.computeIfAbsent(date, _ -> new HashSet<>()).add(
+                        new Edge(sourceNode.document().name(), targetName));
                 }
             });
     }
 
-    public String mermaidGraphFor(
-        String seedDocumentName, int maximumDepth, Set<String> excludedTypeNames)
+    /// @return a number that changes every time the graph changes.
+    long version()
+    {
+        return version;
+    }
+
+    Collection<Node> nodes()
+    {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    boolean isNode(String documentName)
+    {
+        return nodes.containsKey(documentName);
+    }
+
+    /// @return `true` if the graph for the request was rendered before, and nothing within its
+    /// neighbourhood changed since.
+    boolean isRendered(GraphRequest request)
+    {
+        return renderedGraphs.contains(request);
+    }
+
+    /// @return the requests of all rendered graphs that were invalidated since the last call.
+    Set<GraphRequest> takeInvalidatedRequests()
     {
-        var seedNode = nodes.get(seedDocumentName);
+        return renderedGraphs.takeInvalidatedRequests();
+    }
+
+    /// @return the graph for the request, in Mermaid syntax, from the cache if possible; an empty
+    /// string if the seed document isn't a node in the graph.
+    public String mermaidGraphFor(GraphRequest request)
+    {
+        var graph = renderedGraphs.get(request);
+        if (graph != null)
+        {
+            return graph;
+        }
+        var seedNode = nodes.get(request.seedDocumentName());
         if (seedNode == null)
         {
             return "";
         }
         var excludedTypes = settings.nodeTypes().stream()
-            .filter(t -> excludedTypeNames.contains(t.typeName()))
+            .filter(t -> request.excludedTypeNames().contains(t.typeName()))
             .collect(toSet());
-        return mermaidGraphFor(Set.of(seedNode), maximumDepth, excludedTypes);
-    }
-
-    private String mermaidGraphFor(
-        Set<Node> selection, int maximumDepth, Set<Type> excludedTypes)
-    {
-        var builder = new StringBuilder();
+        var builder = new StringBuilder(initialCapacityFor(request));
         builder.append("```mermaid\n");
         builder.append("graph LR\n");
         renderClassDefinitions(builder);
-        var visited = renderNodesAndEdges(builder, selection, maximumDepth, excludedTypes);
+        var visited = renderNodesAndEdges(builder, seedNode, request, excludedTypes);
         renderNodesAsInternalLinks(builder, visited);
         builder.append("```\n");
-        return builder.toString();
+        graph = builder.toString();
+        renderedGraphs.put(request, graph, visited.stream()
+            .map(node -> node.document().name())
+            .collect(toSet()));
+        return graph;
+    }
+
+    /// Estimates the length of the output from the number of nodes and edges that can be rendered
+    /// at most, so that the buffer rarely has to grow while rendering, without reserving a lot of
+    /// memory for graphs that turn out small.
+    private int initialCapacityFor(GraphRequest request)
+    {
+        long nodeCount = Math.min(request.maximumNodes(), nodes.size());
+        long edgeCount = Math.min(request.maximumEdges(), nodeCount * 2);
+        var capacity = ESTIMATED_HEADER_LENGTH
+                       + nodeCount * ESTIMATED_NODE_LENGTH
+                       + edgeCount * ESTIMATED_EDGE_LENGTH;
+        return (int) Math.min(capacity, MAXIMUM_INITIAL_CAPACITY);
     }
 
     /**
@@ -252,98 +512,115 @@ public class MermaidGraph
     }
 
     /**
-     * Starting with a specific set of node, render all related nodes and edges up to a certain
-     * depth.
+     * Starting with the seed node, render all related nodes and edges up to a certain depth, in
+     * breadth-first order, within the node and edge budgets of the request.
+     * <p>
+     * A node counts against the budget as soon as it is discovered, so that every edge that is
+     * rendered ends in a node that is rendered as well. If a budget runs out, the nodes discovered
+     * so far are still rendered, followed by a marker that the graph was truncated.
+     * <p>
+     * If the request has a date window, only edges with at least one date in that window are
+     * followed. If the request limits the number of neighbours, only the neighbours with the
+     * heaviest edges are followed; see {@link Node#edgesBetween(int, int, Predicate, int)}.
      *
      * @param builder       builder to write the output to.
-     * @param selection     nodes to start with.
-     * @param maximumDepth  maximum depth to go, as counted from the seed node.
+     * @param seedNode      node to start with.
+     * @param request       the request, with the maximum depth and budgets.
      * @param excludedTypes set of types to exclude from the graph
-     * @return Node names that were rendered.
+     * @return Nodes that were rendered, in the order they were rendered.
      */
-    private HashSet<Node> renderNodesAndEdges(
-        StringBuilder builder, Set<Node> selection, int maximumDepth,
-        Set<Type> excludedTypes)
+    private List<Node> renderNodesAndEdges(
+        StringBuilder builder, Node seedNode, GraphRequest request, Set<Type> excludedTypes)
     {
+        var fromEpochDay = request.from() != null ? epochDayOf(request.from()) : Integer.MIN_VALUE;
+        var toEpochDay = request.to() != null ? epochDayOf(request.to()) : Integer.MAX_VALUE;
         var queue = new ArrayDeque<Item>();
-        selection.forEach(node -> queue.add(new Item(node, 1)));
-        var visited = new HashSet<Node>();
+        queue.add(new Item(seedNode, 1));
+        var discovered = new HashSet<Node>();
+        discovered.add(seedNode);
+        var visited = new ArrayList<Node>();
+        var isVisited = new HashSet<Node>();
+        var edgeCount = 0;
+        var isTruncated = false;
         while (!queue.isEmpty())
         {
             var item = queue.removeFirst();
             var sourceNode = item.node();
-            if (visited.contains(sourceNode))
-            {
-                continue;
-            }
             builder.append("    ").append(sourceNode.toMermaidNode()).append("\n");
             visited.add(sourceNode);
+            isVisited.add(sourceNode);
             var depth = item.depth();
-            if (depth > maximumDepth)
+            if (depth > request.maximumDepth())
             {
                 continue;
             }
-            for (Node targetNode : sourceNode.edges())
+            var targetNodes = sourceNode.edgesBetween(fromEpochDay, toEpochDay,
+                node -> !excludedTypes.contains(node.nodeType()), request.maximumNeighbours());
+            for (Node targetNode : targetNodes)
             {
-                if (excludedTypes.contains(targetNode.nodeType()))
+                if (isVisited.contains(targetNode))
                 {
                     continue;
                 }
-                if (!visited.contains(targetNode))
+                if (edgeCount == request.maximumEdges())
+                {
+                    isTruncated = true;
+                    break;
+                }
+                if (discovered.add(targetNode))
                 {
+                    if (discovered.size() > request.maximumNodes())
+                    {
+                        discovered.remove(targetNode);
+                        isTruncated = true;
+                        continue;
+                    }
                     queue.addLast(new Item(targetNode, depth + 1));
-                    builder.append("    ")
-                        .append(sourceNode.id())
-                        .append(" --- ")
-                        .append(targetNode.id())
-                        .append("\n");
                 }
+                builder.append("    ")
+                    .append(sourceNode.id())
+                    .append(" --- ")
+                    .append(targetNode.id())
+                    .append("\n");
+                edgeCount++;
             }
         }
+        if (isTruncated)
+        {
+            builder.append("    ")
+                .append(TRUNCATION_MARKER_ID)
+                .append("[\"Graph truncated at ")
+                .append(visited.size())
+                .append(" nodes and ")
+                .append(edgeCount)
+                .append(" edges\"]\n");
+        }
         return visited;
     }
 
     /**
      * Add the {@code internal-link} classification to each node, so that they turn into actual
-     * links in Obsidian.
+     * links in Obsidian. Nodes are listed in the order they were rendered in.
      *
      * @param builder builder to write the output to.
-     * @param visited set of nodes that was generated in the graph.
+     * @param visited nodes that were generated in the graph.
      */
-    private void renderNodesAsInternalLinks(StringBuilder builder, HashSet<Node> visited)
+    private void renderNodesAsInternalLinks(StringBuilder builder, List<Node> visited)
     {
-        builder.append("    class ")
-            .append(visited.stream()
-                .map(Node::id)
-                .sorted()
-                .collect(joining(",")))
-            .append(" internal-link\n");
-    }
-
-    private class NodeFinder
-        extends BreadthFirstVaultVisitor
-    {
-        private final Type type;
-        private boolean isArchived;
-
-        public NodeFinder(Type type)
+        builder.append("    class ");
+        for (var i = 0; i < visited.size(); i++)
         {
-            this.type = type;
-        }
-
-        @Override
-        public void visit(Folder folder)
-        {
-            isArchived = !folder.name().contentEquals(type.folderName());
-            super.visit(folder);
-        }
-
-        @Override
-        public void visit(Document document)
-        {
-            nodes.put(document.name(), new Node(document, type, isArchived));
+            if (i > 0)
+            {
+                builder.append(",");
+            }
+            builder.append(visited.get(i).id());
         }
+        builder.append(" internal-link\n");
     }
 
     private record Item(Node node, int depth) {}
+
+    /// Edge between two nodes, by document name; names are stable, while documents are not.
+    private record Edge(String sourceName, String targetName) {}
 }
@@ -3,6 +3,7 @@ package nl.ulso.vmc.graph;
 import dagger.Binds;
 import dagger.Module;
 import dagger.multibindings.IntoSet;
+import nl.ulso.curator.change.ChangeProcessor;
 import nl.ulso.curator.query.Query;
 
 /// Extracts a graph from the journal.
@@ -10,15 +11,15 @@ import nl.ulso.curator.query.Query;
 @Module
 public abstract class MermaidGraphModule
 {
-//    @Binds
-//    @IntoSet
-//    abstract ChangeProcessor bindMermaidGraph(MermaidGraph mermaidGraph);
-//
-//    @Binds
-//    @IntoSet
-//    abstract Query bindMermaidGraphQuery(MermaidGraphQuery mermaidGraphQuery);
+    @Binds
+    @IntoSet
+    abstract ChangeProcessor bindMermaidGraph(MermaidGraph mermaidGraph);
+
+    @Binds
+    @IntoSet
+    abstract Query bindMermaidGraphQuery(MermaidGraphQuery mermaidGraphQuery);
 
     @Binds
     @IntoSet
-    abstract Query bindMermaidGraphQuery(DisabledGraphQuery query);
+    abstract Query bindGraphExportQuery(GraphExportQuery graphExportQuery);
 }
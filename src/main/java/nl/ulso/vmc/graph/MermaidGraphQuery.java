@@ -1,28 +1,45 @@
 package nl.ulso.vmc.graph;
 
 import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
 import nl.ulso.curator.change.Changelog;
 import nl.ulso.curator.query.*;
 
+import java.lang.ref.WeakReference;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import static java.lang.Integer.max;
+import static java.time.ZoneId.systemDefault;
 
 /// Query to generate graphs from notes.
 ///
 /// See [MermaidGraph] for details on how the graph is constructed.
+///
+/// The `maxNodes` and `maxEdges` budgets are opt-in: without them, a graph is rendered in full,
+/// as before they existed. A graph that doesn't fit its budgets ends in a visible marker saying
+/// where it was truncated.
+///
+/// With `lastDays` the window moves along with the current date. Since the date is part of the
+/// request, a graph rendered on an earlier day is not reused.
+@Singleton
 public final class MermaidGraphQuery
     implements Query
 {
+
     private final MermaidGraph graph;
     private final QueryResultFactory resultFactory;
+    private InvalidatedRequests lastInvalidatedRequests;
 
     @Inject
     public MermaidGraphQuery(MermaidGraph mermaidGraph, QueryResultFactory resultFactory)
     {
         this.graph = mermaidGraph;
         this.resultFactory = resultFactory;
+        this.lastInvalidatedRequests = new InvalidatedRequests(new WeakReference<>(null), Set.of());
     }
 
     @Override
@@ -43,27 +60,122 @@ public final class MermaidGraphQuery
         return Map.of(
             "seed", "Document to start with; defaults to the current document",
             "depth", "Number of edges to follow from the source; defaults to 1",
-            "exclude", "List of node types to exclude from the graph; defaults to empty."
+            "exclude", "List of node types to exclude from the graph; defaults to empty.",
+            "maxNodes", "Maximum number of nodes to render; defaults to no limit",
+            "maxEdges", "Maximum number of edges to render; defaults to no limit",
+            "from", "Include only edges from journal entries on or after this date (yyyy-mm-dd)",
+            "to", "Include only edges from journal entries on or before this date (yyyy-mm-dd)",
+            "topK", "Follow only the K neighbours with the most journal dates; defaults to all",
+            "lastDays", "Include only edges from the last N days of the journal; overrides 'from'"
         );
     }
 
+    /// A graph query is impacted only if a change happened within the neighbourhood of its seed:
+    /// the graph keeps track of the nodes each rendered graph visited, and drops the graph as soon
+    /// as one of those changes. If the seed isn't a node, only a change to a node can make it one.
+    ///
+    /// Whether the graph was dropped can't be decided by looking at the cache: several queries can
+    /// have the same request, and the first one to run fills the cache again for the others. So
+    /// instead, the requests the graph invalidated are taken once per changelog, and every query
+    /// is checked against those.
     @Override
     public boolean isImpactedBy(Changelog changelog, QueryDefinition definition)
     {
-        return changelog.changes().anyMatch(graph.isNodeEntry());
+        GraphRequest request;
+        try
+        {
+            request = graphRequestFor(definition);
+        }
+        catch (DateTimeParseException e)
+        {
+            return true;
+        }
+        if (invalidatedRequestsFor(changelog).contains(request))
+        {
+            return true;
+        }
+        if (graph.isRendered(request))
+        {
+            return false;
+        }
+        return graph.isNode(request.seedDocumentName())
+               || changelog.changes().anyMatch(graph.isNodeEntry());
+    }
+
+    private synchronized Set<GraphRequest> invalidatedRequestsFor(Changelog changelog)
+    {
+        var invalidatedRequests = lastInvalidatedRequests;
+        if (invalidatedRequests.changelog().get() != changelog)
+        {
+            invalidatedRequests = new InvalidatedRequests(
+                new WeakReference<>(changelog), graph.takeInvalidatedRequests());
+            lastInvalidatedRequests = invalidatedRequests;
+        }
+        return invalidatedRequests.requests();
     }
 
     @Override
     public QueryResult run(QueryDefinition definition)
     {
-        var seedName = definition.configuration().string("seed", definition.document().name());
-        var maxDepth = max(definition.configuration().integer("depth", 1), 0);
-        var excludedTypeNames = new HashSet<>(definition.configuration().listOfStrings("exclude"));
-        var mermaid = graph.mermaidGraphFor(seedName, maxDepth, new HashSet<>(excludedTypeNames));
+        GraphRequest request;
+        try
+        {
+            request = graphRequestFor(definition);
+        }
+        catch (DateTimeParseException e)
+        {
+            return resultFactory.error("Invalid date: " + e.getParsedString());
+        }
+        if (request.from() != null && request.to() != null && request.from().isAfter(request.to()))
+        {
+            return resultFactory.error("The 'from' date must not be after the 'to' date.");
+        }
+        var mermaid = graph.mermaidGraphFor(request);
         if (mermaid.isBlank())
         {
             return resultFactory.error("No graph available.");
         }
         return resultFactory.string(mermaid);
     }
+
+    private GraphRequest graphRequestFor(QueryDefinition definition)
+    {
+        var seedName = definition.configuration().string("seed", definition.document().name());
+        var maxDepth = max(definition.configuration().integer("depth", 1), 0);
+        var excludedTypeNames = new HashSet<>(definition.configuration().listOfStrings("exclude"));
+        var maxNodes = limitFrom(definition, "maxNodes");
+        var maxEdges = limitFrom(definition, "maxEdges");
+        var from = dateFrom(definition, "from");
+        var to = dateFrom(definition, "to");
+        var lastDays = definition.configuration().integer("lastDays", -1);
+        if (lastDays >= 0)
+        {
+            from = LocalDate.now(systemDefault()).minusDays(lastDays);
+        }
+        var maxNeighbours = limitFrom(definition, "topK");
+        return new GraphRequest(
+            seedName, maxDepth, excludedTypeNames, maxNodes, maxEdges, from, to, maxNeighbours);
+    }
+
+    /// @return the limit set in the property; no limit at all if it isn't set, or not positive.
+    private int limitFrom(QueryDefinition definition, String property)
+    {
+        var limit = definition.configuration().integer(property, 0);
+        return limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+
+    private LocalDate dateFrom(QueryDefinition definition, String property)
+    {
+        var value = definition.configuration().string(property, null);
+        if (value == null || value.isBlank())
+        {
+            return null;
+        }
+        return LocalDate.parse(value.trim());
+    }
+
+    private record InvalidatedRequests(
+        WeakReference<Changelog> changelog, Set<GraphRequest> requests)
+    {
+    }
 }
@@ -1,7 +1,15 @@
 package nl.ulso.vmc.graph;
 
+import nl.ulso.curator.change.Change;
+
 import java.util.*;
 
+/// Classifies nodes for rendering, by Mermaid class.
+///
+/// Classifications are memoized on the node. A node is classified again when its document changes.
+/// A classifier that depends on anything else must declare the payload types of the changes to
+/// that input; the graph then asks the classifier which nodes are affected, and looks those up
+/// directly.
 public interface MermaidNodeClassifier
 {
     MermaidNodeClassifier DEFAULT_CLASSIFIER = new DefaultNodeClassifier();
@@ -15,4 +23,17 @@ public interface MermaidNodeClassifier
     {
         return Optional.empty();
     }
+
+    default Set<Class<?>> inputPayloadTypes()
+    {
+        return Collections.emptySet();
+    }
+
+    /// @return the names of the documents of the nodes whose classification might change because
+    /// of the change, with one of the input payload types. Classifiers that declare input payload
+    /// types must override this method.
+    default Set<String> affectedDocumentNames(Change<?> change)
+    {
+        return Collections.emptySet();
+    }
 }
@@ -4,30 +4,58 @@ import nl.ulso.curator.vault.Document;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
 
+import static java.util.Comparator.comparingInt;
+import static java.util.Comparator.reverseOrder;
 import static nl.ulso.hash.ShortHasher.shortHashOf;
+import static nl.ulso.vmc.graph.EdgeDates.NO_DATES;
+import static nl.ulso.vmc.graph.EdgeDates.countBetween;
+import static nl.ulso.vmc.graph.EdgeDates.hasDateBetween;
+import static nl.ulso.vmc.graph.EdgeDates.withDate;
+import static nl.ulso.vmc.graph.EdgeDates.withoutDate;
 
 /// Represents a single node in the graph.
 ///
-/// Edges are bidirectional. The same edge is registered on both nodes involved. That means that if
-/// an edge is added or removed to the graph, this must be done to both nodes, always. The reason to
-/// do this is to be able to efficiently generate graphs, starting from any seed node.
+/// Edges are bidirectional. The same edge is registered on both nodes involved. The reason to do
+/// this is to be able to efficiently generate graphs, starting from any seed node. Adding or
+/// removing an edge on one node always does the same on the other node.
+///
+/// Edges are stored compactly: each node keeps the indexes of its neighbours in the [NodeTable] in
+/// an array of ints, with a parallel array of [EdgeDates]. Both nodes of an edge share the same
+/// dates array. Neighbours are kept in sort order at all times, so that they can be listed without
+/// sorting them, and looked up with a binary search.
 public final class Node
     implements Comparable<Node>
 {
+    private static final int[] NO_NEIGHBOURS = new int[0];
+    private static final int[][] NO_EDGE_DATES = new int[0][];
+    private static final Comparator<WeightedNode> WEAKEST_FIRST =
+        comparingInt(WeightedNode::weight).thenComparing(WeightedNode::position, reverseOrder());
+
     private final String id;
     private final Type type;
-    private final boolean isArchived;
-    private final Map<Node, EdgeData> edges;
+    private final int index;
+    private final NodeTable table;
+    private boolean isArchived;
     private Document document;
+    private volatile String mermaidNode;
+    private int[] neighbours;
+    private int[][] edgeDates;
+    private int degree;
 
-    Node(Document document, Type type, boolean isArchived)
+    Node(Document document, Type type, boolean isArchived, int index, NodeTable table)
     {
         this.id = shortHashOf(document.name());
         this.type = type;
+        this.index = index;
+        this.table = table;
         this.isArchived = isArchived;
-        this.edges = new TreeMap<>();
         this.document = document;
+        this.neighbours = NO_NEIGHBOURS;
+        this.edgeDates = NO_EDGE_DATES;
+        this.degree = 0;
     }
 
     public String id()
@@ -50,15 +78,82 @@ public final class Node
         return isArchived;
     }
 
-    public Set<Node> edges()
+    /// @return the nodes this node has an edge with, in sort order.
+    public List<Node> edges()
+    {
+        return edgesBetween(Integer.MIN_VALUE, Integer.MAX_VALUE, _ -> true, Integer.MAX_VALUE);
+    }
+
+    /// Selects the nodes this node has an edge with that has at least one date within the range,
+    /// bounds included, and that are accepted by the filter.
+    ///
+    /// The weight of an edge is the number of distinct dates it has within the range. If more than
+    /// `limit` nodes qualify, only those with the heaviest edges are selected; on equal weights the
+    /// nodes first in sort order win. The selection keeps no more than `limit` candidates at any
+    /// time, instead of sorting all edges by weight.
+    ///
+    /// @return the selected nodes, in sort order.
+    List<Node> edgesBetween(
+        int fromEpochDay, int toEpochDay, Predicate<Node> filter, int limit)
     {
-        return Collections.unmodifiableSet(edges.keySet());
+        if (limit >= degree)
+        {
+            var result = new ArrayList<Node>(degree);
+            for (var i = 0; i < degree; i++)
+            {
+                if (!hasDateBetween(edgeDates[i], fromEpochDay, toEpochDay))
+                {
+                    continue;
+                }
+                var targetNode = table.get(neighbours[i]);
+                if (filter.test(targetNode))
+                {
+                    result.add(targetNode);
+                }
+            }
+            return result;
+        }
+        var selection = new PriorityQueue<WeightedNode>(limit + 1, WEAKEST_FIRST);
+        for (var i = 0; i < degree; i++)
+        {
+            var weight = countBetween(edgeDates[i], fromEpochDay, toEpochDay);
+            if (weight == 0 || !filter.test(table.get(neighbours[i])))
+            {
+                continue;
+            }
+            selection.add(new WeightedNode(i, weight));
+            if (selection.size() > limit)
+            {
+                selection.poll();
+            }
+        }
+        var positions = new int[selection.size()];
+        var count = 0;
+        for (WeightedNode weightedNode : selection)
+        {
+            positions[count++] = weightedNode.position();
+        }
+        Arrays.sort(positions);
+        var result = new ArrayList<Node>(positions.length);
+        for (int position : positions)
+        {
+            result.add(table.get(neighbours[position]));
+        }
+        return result;
     }
 
+    /// Renders this node in Mermaid syntax. The result is memoized, until the document of this
+    /// node is replaced or the graph finds that the input of its classifier changed.
     public String toMermaidNode()
     {
-        var className = type.classifier().classify(this);
-        return type.shape().toMermaidNode(id, document().name(), className);
+        var result = mermaidNode;
+        if (result == null)
+        {
+            var className = type.classifier().classify(this);
+            result = type.shape().toMermaidNode(id, document().name(), className);
+            mermaidNode = result;
+        }
+        return result;
     }
 
     @Override
@@ -84,29 +179,133 @@ public final class Node
         return document.sortableTitle().compareTo(node.document.sortableTitle());
     }
 
+    int index()
+    {
+        return index;
+    }
+
+    /// Adds an edge between this node and the target node for the given date, on both sides.
     void addEdge(Node targetNode, LocalDate date)
     {
         if (this == targetNode)
         {
             return;
         }
-        edges.computeIfAbsent(targetNode, _ -> new EdgeData()).addDate(date);
+        var position = positionOf(targetNode);
+        if (position < 0)
+        {
+            var dates = withDate(NO_DATES, date);
+            insertEdgeAt(-position - 1, targetNode.index, dates);
+            targetNode.insertEdgeAt(-targetNode.positionOf(this) - 1, index, dates);
+            return;
+        }
+        var dates = withDate(edgeDates[position], date);
+        if (dates != edgeDates[position])
+        {
+            edgeDates[position] = dates;
+            targetNode.edgeDates[targetNode.positionOf(this)] = dates;
+        }
+    }
+
+    /// Removes the given date from the edge between this node and the target node, on both sides.
+    /// If no dates are left, the edge is removed.
+    void removeEdgeDate(Node targetNode, LocalDate date)
+    {
+        var position = positionOf(targetNode);
+        if (position < 0)
+        {
+            return;
+        }
+        var dates = withoutDate(edgeDates[position], date);
+        if (dates.length == 0)
+        {
+            removeEdgeAt(position);
+            targetNode.removeEdgeAt(targetNode.positionOf(this));
+        }
+        else if (dates != edgeDates[position])
+        {
+            edgeDates[position] = dates;
+            targetNode.edgeDates[targetNode.positionOf(this)] = dates;
+        }
     }
 
-    void removeEdgesFor(LocalDate date)
+    /// Passes every neighbour of this node to the consumer, together with the sorted epoch days of
+    /// the edge. The consumer must not change the array.
+    void forEachEdge(BiConsumer<Node, int[]> consumer)
     {
-        var edgesToRemove = new HashSet<Node>();
-        edges.forEach((key, edge) -> {
-            edge.removeDate(date);
-            if (edge.isInvalid())
+        for (var i = 0; i < degree; i++)
+        {
+            consumer.accept(table.get(neighbours[i]), edgeDates[i]);
+        }
+    }
+
+    /// Removes all edges of this node, from both sides.
+    void removeAllEdges()
+    {
+        for (var i = 0; i < degree; i++)
+        {
+            var targetNode = table.get(neighbours[i]);
+            targetNode.removeEdgeAt(targetNode.positionOf(this));
+        }
+        neighbours = NO_NEIGHBOURS;
+        edgeDates = NO_EDGE_DATES;
+        degree = 0;
+    }
+
+    /// Looks up the target node in the neighbours of this node, which are in sort order. Nodes
+    /// with the same sort title are ordered by index, so that every node has a single position.
+    ///
+    /// @return the position of the target node if it is a neighbour; otherwise `-(insertion
+    /// point) - 1`, just like `Arrays.binarySearch`.
+    private int positionOf(Node targetNode)
+    {
+        var low = 0;
+        var high = degree - 1;
+        while (low <= high)
+        {
+            var middle = (low + high) >>> 1;
+            var neighbour = neighbours[middle];
+            if (neighbour == targetNode.index)
             {
-                edgesToRemove.add(key);
+                return middle;
             }
-        });
-        edgesToRemove.forEach(edges::remove);
+            var comparison = table.get(neighbour).compareTo(targetNode);
+            if (comparison < 0 || (comparison == 0 && neighbour < targetNode.index))
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void insertEdgeAt(int position, int neighbour, int[] dates)
+    {
+        if (degree == neighbours.length)
+        {
+            var capacity = Math.max(4, degree * 2);
+            neighbours = Arrays.copyOf(neighbours, capacity);
+            edgeDates = Arrays.copyOf(edgeDates, capacity);
+        }
+        System.arraycopy(neighbours, position, neighbours, position + 1, degree - position);
+        System.arraycopy(edgeDates, position, edgeDates, position + 1, degree - position);
+        neighbours[position] = neighbour;
+        edgeDates[position] = dates;
+        degree++;
     }
 
-    void replaceDocumentWith(Document newDocument)
+    private void removeEdgeAt(int position)
+    {
+        degree--;
+        System.arraycopy(neighbours, position + 1, neighbours, position, degree - position);
+        System.arraycopy(edgeDates, position + 1, edgeDates, position, degree - position);
+        edgeDates[degree] = null;
+    }
+
+    void replaceDocumentWith(Document newDocument, boolean isArchived)
     {
         if (!document.name().equals(newDocument.name()))
         {
@@ -114,6 +313,39 @@ public final class Node
                 "Document name mismatch. Only replace documents if they represent the same " +
                 "file!");
         }
+        if (document.sortableTitle().equals(newDocument.sortableTitle()))
+        {
+            this.document = newDocument;
+        }
+        else
+        {
+            moveInNeighboursTo(newDocument);
+        }
+        this.isArchived = isArchived;
+        this.mermaidNode = null;
+    }
+
+    /// Replaces the document of this node with one that sorts differently, moving this node to its
+    /// new position in the neighbours of each of its neighbours.
+    private void moveInNeighboursTo(Document newDocument)
+    {
+        for (var i = 0; i < degree; i++)
+        {
+            var targetNode = table.get(neighbours[i]);
+            targetNode.removeEdgeAt(targetNode.positionOf(this));
+        }
         this.document = newDocument;
+        for (var i = 0; i < degree; i++)
+        {
+            var targetNode = table.get(neighbours[i]);
+            targetNode.insertEdgeAt(-targetNode.positionOf(this) - 1, index, edgeDates[i]);
+        }
     }
+
+    void forgetMermaidNode()
+    {
+        this.mermaidNode = null;
+    }
+
+    private record WeightedNode(int position, int weight) {}
 }
@@ -0,0 +1,63 @@
+package nl.ulso.vmc.graph;
+
+import nl.ulso.curator.vault.Document;
+
+import java.util.Arrays;
+
+/// Interns the nodes in the graph to small integer indexes, so that edges can be stored as plain
+/// arrays of ints, instead of as maps of objects.
+///
+/// The index of a removed node is handed out again to the next new node, to keep the table dense.
+/// A node must be disconnected from the graph before it is removed from the table; otherwise other
+/// nodes would still refer to its index.
+final class NodeTable
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Node[] nodes;
+    private int[] freeIndexes;
+    private int freeIndexCount;
+    private int nextIndex;
+
+    NodeTable()
+    {
+        this.nodes = new Node[INITIAL_CAPACITY];
+        this.freeIndexes = new int[INITIAL_CAPACITY];
+        this.freeIndexCount = 0;
+        this.nextIndex = 0;
+    }
+
+    Node newNode(Document document, Type type, boolean isArchived)
+    {
+        var index = freeIndexCount > 0 ? freeIndexes[--freeIndexCount] : nextIndex++;
+        if (index == nodes.length)
+        {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        var node = new Node(document, type, isArchived, index, this);
+        nodes[index] = node;
+        return node;
+    }
+
+    Node get(int index)
+    {
+        return nodes[index];
+    }
+
+    void remove(Node node)
+    {
+        nodes[node.index()] = null;
+        if (freeIndexCount == freeIndexes.length)
+        {
+            freeIndexes = Arrays.copyOf(freeIndexes, freeIndexes.length * 2);
+        }
+        freeIndexes[freeIndexCount++] = node.index();
+    }
+
+    void clear()
+    {
+        Arrays.fill(nodes, 0, nextIndex, null);
+        freeIndexCount = 0;
+        nextIndex = 0;
+    }
+}
@@ -0,0 +1,122 @@
+package nl.ulso.vmc.graph;
+
+import java.util.*;
+
+/// Caches rendered graphs, together with the names of the nodes that were visited to render them.
+///
+/// A cached graph is invalidated as soon as any of the nodes it visited changes, including changes
+/// to the edges of such a node. Changes elsewhere in the graph can't affect the output, so they
+/// leave the graph in the cache.
+///
+/// The requests of the graphs that were invalidated are kept until they are taken, so that queries
+/// can tell whether their graph was affected by the latest changes, even after another query with
+/// the same request rendered the graph again.
+///
+/// The cache holds a bounded number of graphs. When it is full, the graph that was asked for least
+/// recently is evicted. Without that bound, every request ever made would be kept for the life of
+/// the process: each edited query configuration adds a new one, and queries with a date window
+/// relative to today add a new one every day.
+///
+/// Graphs are rendered by queries, which may run concurrently; hence the synchronization.
+final class RenderedGraphCache
+{
+    static final int DEFAULT_MAXIMUM_SIZE = 128;
+
+    private final int maximumSize;
+    private final LinkedHashMap<GraphRequest, String> graphs;
+    private final Map<GraphRequest, Set<String>> visitedNodeNames;
+    private final Map<String, Set<GraphRequest>> requestsByNodeName;
+    private Set<GraphRequest> invalidatedRequests;
+
+    RenderedGraphCache()
+    {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    RenderedGraphCache(int maximumSize)
+    {
+        this.maximumSize = maximumSize;
+        this.graphs = new LinkedHashMap<>(16, 0.75f, true);
+        this.visitedNodeNames = new HashMap<>();
+        this.requestsByNodeName = new HashMap<>();
+        this.invalidatedRequests = new HashSet<>();
+    }
+
+    /// @return the cached graph for the request, or `null` if there is none.
+    synchronized String get(GraphRequest request)
+    {
+        return graphs.get(request);
+    }
+
+    synchronized boolean contains(GraphRequest request)
+    {
+        return graphs.containsKey(request);
+    }
+
+    synchronized void put(GraphRequest request, String graph, Set<String> nodeNames)
+    {
+        remove(request);
+        graphs.put(request, graph);
+        visitedNodeNames.put(request, nodeNames);
+        nodeNames.forEach(name ->
+            requestsByNodeName.computeIfAbsent(name, _ -> new HashSet<>()).add(request));
+        if (graphs.size() > maximumSize)
+        {
+            remove(graphs.firstEntry().getKey());
+        }
+    }
+
+    synchronized int size()
+    {
+        return graphs.size();
+    }
+
+    /// Invalidates all cached graphs that visited the node with the given name.
+    synchronized void invalidate(String nodeName)
+    {
+        var requests = requestsByNodeName.remove(nodeName);
+        if (requests != null)
+        {
+            requests.forEach(this::remove);
+            invalidatedRequests.addAll(requests);
+        }
+    }
+
+    /// @return the requests of all graphs that were invalidated since the last call.
+    synchronized Set<GraphRequest> takeInvalidatedRequests()
+    {
+        var requests = invalidatedRequests;
+        invalidatedRequests = new HashSet<>();
+        return requests;
+    }
+
+    synchronized void clear()
+    {
+        invalidatedRequests.addAll(graphs.keySet());
+        graphs.clear();
+        visitedNodeNames.clear();
+        requestsByNodeName.clear();
+    }
+
+    private void remove(GraphRequest request)
+    {
+        graphs.remove(request);
+        var nodeNames = visitedNodeNames.remove(request);
+        if (nodeNames == null)
+        {
+            return;
+        }
+        for (String nodeName : nodeNames)
+        {
+            var requests = requestsByNodeName.get(nodeName);
+            if (requests != null)
+            {
+                requests.remove(request);
+                if (requests.isEmpty())
+                {
+                    requestsByNodeName.remove(nodeName);
+                }
+            }
+        }
+    }
+}
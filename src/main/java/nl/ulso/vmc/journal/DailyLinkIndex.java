@@ -0,0 +1,84 @@
+package nl.ulso.vmc.journal;
+
+import nl.ulso.curator.change.Change;
+import nl.ulso.curator.vault.Document;
+import nl.ulso.curator.vault.InternalLink;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toUnmodifiableSet;
+import static nl.ulso.curator.change.Change.Kind.DELETE;
+import static nl.ulso.curator.change.Change.isPayloadType;
+
+/// Indexes the names of the documents each daily in the journal links to, by date.
+///
+/// A `Daily` can tell whether it refers to a given name, but not which names it refers to. Without
+/// this index, finding everything a daily links to means asking it about every candidate name in
+/// turn. With it, that's a single lookup.
+///
+/// The index is built from the documents in the journal, which are named after their date, as they
+/// change. Processors that need it keep an instance of their own, and feed it the [Document]
+/// changes that match [#isDailyDocument()]. Those changes come before the changes to the dailies
+/// the journal derives from them, so the index is always up to date by the time a daily changes.
+public final class DailyLinkIndex
+{
+    private final Map<LocalDate, Set<String>> linkTargets;
+
+    public DailyLinkIndex()
+    {
+        this.linkTargets = new HashMap<>();
+    }
+
+    /// @return a predicate that selects changes to documents that are named after a date.
+    public static Predicate<Change<?>> isDailyDocument()
+    {
+        return isPayloadType(Document.class)
+            .and(change -> dateOf(((Document) change.value()).name()).isPresent());
+    }
+
+    /// Updates the index with a change to a document selected by [#isDailyDocument()].
+    public void process(Change<?> change)
+    {
+        var document = change.as(Document.class).value();
+        var date = dateOf(document.name()).orElseThrow();
+        if (change.kind() == DELETE)
+        {
+            linkTargets.remove(date);
+            return;
+        }
+        linkTargets.put(date, document.findInternalLinks().stream()
+            .map(InternalLink::targetDocument)
+            .collect(toUnmodifiableSet()));
+    }
+
+    /// @return the names of the documents the daily on the given date links to, if the index has
+    /// seen the document of that daily.
+    public Optional<Set<String>> linkTargetsOn(LocalDate date)
+    {
+        return Optional.ofNullable(linkTargets.get(date));
+    }
+
+    public void clear()
+    {
+        linkTargets.clear();
+    }
+
+    private static Optional<LocalDate> dateOf(String documentName)
+    {
+        if (documentName.length() != 10 || documentName.charAt(4) != '-')
+        {
+            return Optional.empty();
+        }
+        try
+        {
+            return Optional.of(LocalDate.parse(documentName));
+        }
+        catch (DateTimeParseException e)
+        {
+            return Optional.empty();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package nl.ulso.vmc.rabobank;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import nl.ulso.curator.addon.project.*;
+import nl.ulso.curator.change.Change;
 import nl.ulso.curator.vault.Document;
 import nl.ulso.vmc.graph.DefaultNodeClassifier;
 import nl.ulso.vmc.graph.Node;
@@ -52,6 +53,25 @@ public class ProjectNodeClassifier
         });
     }
 
+    /// The status of a project comes from its attributes, which are produced from several sources,
+    /// like the journal and OmniFocus. A change to the project document itself is not enough.
+    @Override
+    public Set<Class<?>> inputPayloadTypes()
+    {
+        return Set.of(Project.class, AttributeValue.class);
+    }
+
+    @Override
+    public Set<String> affectedDocumentNames(Change<?> change)
+    {
+        return switch (change.value())
+        {
+            case Project project -> Set.of(project.document().name());
+            case AttributeValue value -> Set.of(value.project().document().name());
+            default -> Collections.emptySet();
+        };
+    }
+
     private Optional<Project> projectFor(Document document)
     {
         return projectRepository.projects().stream()
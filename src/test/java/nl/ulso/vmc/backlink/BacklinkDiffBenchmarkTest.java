@@ -0,0 +1,131 @@
+package nl.ulso.vmc.backlink;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+import static java.util.stream.Collectors.toSet;
+import static nl.ulso.vmc.backlink.BacklinkProducer.diffLinkCounts;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/// Compares the diff of the links in the old and new version of an updated document, as done by
+/// [BacklinkProducer] now, with the diff as it was done before: filtering the links of both
+/// versions into new sets, copying those, and removing one from the other.
+///
+/// The document has 200 links, one of which changes between versions. Half of the links point to
+/// documents that are tracked for backlinks.
+///
+/// Timings depend on the machine, so this benchmark only runs on request:
+/// `mvn test -Dtest=BacklinkDiffBenchmarkTest -Dbenchmark=true`.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class BacklinkDiffBenchmarkTest
+{
+    private static final Logger LOGGER = getLogger(BacklinkDiffBenchmarkTest.class);
+    private static final int LINK_COUNT = 200;
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 100_000;
+
+    @Test
+    void diffIsFasterThanCopyingSets()
+    {
+        var oldLinks = new ArrayList<String>();
+        var trackedLinks = new HashSet<String>();
+        for (var i = 0; i < LINK_COUNT; i++)
+        {
+            oldLinks.add("Document " + i);
+            if (i % 2 == 0)
+            {
+                trackedLinks.add("Document " + i);
+            }
+        }
+        var newLinks = new ArrayList<>(oldLinks);
+        newLinks.set(0, "Document " + LINK_COUNT);
+        trackedLinks.add("Document " + LINK_COUNT);
+        var oldCounts = countsOf(oldLinks);
+        var newCounts = countsOf(newLinks);
+
+        var baseline = measure("Copying sets",
+            _ -> copyingSets(oldLinks, newLinks, trackedLinks));
+        var current = measure("Diffing link counts",
+            _ -> diffingLinkCounts(oldCounts, newCounts, trackedLinks));
+        assertThat(current).isLessThan(baseline);
+    }
+
+    /// The diff as it was, including its bug: it removes from the old links instead of from the
+    /// deleted links, so every tracked old link comes out as deleted.
+    private static int copyingSets(
+        List<String> oldDocumentLinks, List<String> newDocumentLinks, Set<String> trackedLinks)
+    {
+        var oldLinks = oldDocumentLinks.stream().filter(trackedLinks::contains).collect(toSet());
+        var newLinks = newDocumentLinks.stream().filter(trackedLinks::contains).collect(toSet());
+        var changes = 0;
+        if (!oldLinks.isEmpty())
+        {
+            var deletedLinks = new HashSet<>(oldLinks);
+            oldLinks.removeAll(newLinks);
+            changes += deletedLinks.size();
+        }
+        if (!newLinks.isEmpty())
+        {
+            var createdLinks = new HashSet<>(newLinks);
+            createdLinks.removeAll(oldLinks);
+            changes += createdLinks.size();
+        }
+        return changes;
+    }
+
+    private static int diffingLinkCounts(
+        Map<String, Integer> oldLinks, Map<String, Integer> newLinks, Set<String> trackedLinks)
+    {
+        var changes = new int[1];
+        diffLinkCounts(oldLinks, newLinks, trackedLinks, new BacklinkProducer.LinkCountListener()
+        {
+            @Override
+            public void linkCreated(String link, int count)
+            {
+                changes[0]++;
+            }
+
+            @Override
+            public void linkUpdated(String link, int oldCount, int newCount)
+            {
+                changes[0]++;
+            }
+
+            @Override
+            public void linkDeleted(String link, int count)
+            {
+                changes[0]++;
+            }
+        });
+        return changes[0];
+    }
+
+    private static long measure(String name, ToIntFunction<Integer> diff)
+    {
+        var changes = 0L;
+        for (var i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            changes += diff.applyAsInt(i);
+        }
+        var start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; i++)
+        {
+            changes += diff.applyAsInt(i);
+        }
+        var average = (System.nanoTime() - start) / ITERATIONS;
+        LOGGER.info("{}: {} ns per update ({} changes in total).", name, average, changes);
+        return average;
+    }
+
+    private static Map<String, Integer> countsOf(List<String> links)
+    {
+        var counts = new HashMap<String, Integer>();
+        links.forEach(link -> counts.merge(link, 1, Integer::sum));
+        return Map.copyOf(counts);
+    }
+}
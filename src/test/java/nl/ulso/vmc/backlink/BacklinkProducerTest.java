@@ -0,0 +1,66 @@
+package nl.ulso.vmc.backlink;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static nl.ulso.vmc.backlink.BacklinkProducer.diffLinkCounts;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BacklinkProducerTest
+{
+    @Test
+    void unchangedLinksAreUpdatedNotDeleted()
+    {
+        var events = diff(Map.of("a", 1, "b", 2), Map.of("a", 1, "b", 2), Set.of("a", "b"));
+        assertThat(events).containsExactlyInAnyOrder("update a 1 1", "update b 2 2");
+    }
+
+    @Test
+    void removedLinkIsDeleted()
+    {
+        var events = diff(Map.of("a", 1, "b", 2), Map.of("a", 1), Set.of("a", "b"));
+        assertThat(events).containsExactlyInAnyOrder("update a 1 1", "delete b 2");
+    }
+
+    @Test
+    void addedLinkIsCreated()
+    {
+        var events = diff(Map.of("a", 1), Map.of("a", 3, "b", 1), Set.of("a", "b"));
+        assertThat(events).containsExactlyInAnyOrder("update a 1 3", "create b 1");
+    }
+
+    @Test
+    void untrackedLinksAreIgnored()
+    {
+        var events = diff(Map.of("a", 1, "x", 1), Map.of("y", 1), Set.of("b"));
+        assertThat(events).isEmpty();
+    }
+
+    private static List<String> diff(
+        Map<String, Integer> oldLinks, Map<String, Integer> newLinks, Set<String> trackedLinks)
+    {
+        var events = new ArrayList<String>();
+        diffLinkCounts(oldLinks, newLinks, trackedLinks, new BacklinkProducer.LinkCountListener()
+        {
+            @Override
+            public void linkCreated(String link, int count)
+            {
+                events.add("create " + link + " " + count);
+            }
+
+            @Override
+            public void linkUpdated(String link, int oldCount, int newCount)
+            {
+                events.add("update " + link + " " + oldCount + " " + newCount);
+            }
+
+            @Override
+            public void linkDeleted(String link, int count)
+            {
+                events.add("delete " + link + " " + count);
+            }
+        });
+        return events;
+    }
+}
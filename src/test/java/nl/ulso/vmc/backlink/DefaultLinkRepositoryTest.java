@@ -0,0 +1,65 @@
+package nl.ulso.vmc.backlink;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static nl.ulso.vmc.backlink.DefaultLinkRepository.documentsLinkingTo;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DefaultLinkRepositoryTest
+{
+    private static final Map<String, Set<String>> INCOMING_LINKS = Map.of(
+        "target", Set.of("c", "a", "b"),
+        "a", Set.of("d", "target"),
+        "b", Set.of("e", "a"),
+        "d", Set.of("f")
+    );
+
+    @Test
+    void documentsAreGroupedByShortestDistance()
+    {
+        var groups = documentsLinkingTo(INCOMING_LINKS, "target", 3, 100);
+        assertThat(groups).hasSize(3);
+        assertThat(groups.get(0)).containsExactlyInAnyOrder("a", "b", "c");
+        assertThat(groups.get(1)).containsExactlyInAnyOrder("d", "e");
+        assertThat(groups.get(2)).containsExactly("f");
+    }
+
+    @Test
+    void searchStopsAtMaximumDepth()
+    {
+        var groups = documentsLinkingTo(INCOMING_LINKS, "target", 1, 100);
+        assertThat(groups).hasSize(1);
+    }
+
+    @Test
+    void levelThatDoesNotFitIsCutOffByName()
+    {
+        var groups = documentsLinkingTo(INCOMING_LINKS, "target", 3, 2);
+        assertThat(groups).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void cutOffIgnoresEmojisLikeTheListingDoes()
+    {
+        var incomingLinks = Map.of("target", Set.of("beta", "🚀 alpha", "gamma"));
+        var groups = documentsLinkingTo(incomingLinks, "target", 1, 1);
+        assertThat(groups).containsExactly(List.of("🚀 alpha"));
+    }
+
+    @Test
+    void cutOffAppliesToLastLevelOnly()
+    {
+        var groups = documentsLinkingTo(INCOMING_LINKS, "target", 3, 4);
+        assertThat(groups).hasSize(2);
+        assertThat(groups.get(0)).containsExactlyInAnyOrder("a", "b", "c");
+        assertThat(groups.get(1)).containsExactly("d");
+    }
+
+    @Test
+    void unknownDocumentHasNoBacklinks()
+    {
+        assertThat(documentsLinkingTo(INCOMING_LINKS, "unknown", 3, 100)).isEmpty();
+    }
+}
@@ -0,0 +1,138 @@
+package nl.ulso.vmc.backlink;
+
+import nl.ulso.curator.vault.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static nl.ulso.curator.vault.Document.newDocument;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InternalLinkCacheTest
+{
+    private static final long LAST_MODIFIED = 1_000L;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void shutdownHookIsRegisteredOnce()
+    {
+        var hooks = new ArrayList<Runnable>();
+        new InternalLinkCache(snapshotPath(), hooks::add);
+        assertThat(hooks).hasSize(1);
+    }
+
+    @Test
+    void missingSnapshotStartsEmpty()
+    {
+        var cache = newCache();
+        assertThat(cache.linkCountsOf(document("a", "[[target]]")))
+            .containsExactly(Map.entry("target", 1));
+    }
+
+    @Test
+    void linksSurviveARoundTrip()
+    {
+        var cache = newCache();
+        cache.linkCountsOf(document("a", "[[target]] and [[target]] and [[other]]"));
+        cache.writeSnapshot();
+        var restored = newCache();
+        assertThat(restored.linkCountsOf(document("a", "No links at all")))
+            .containsOnly(Map.entry("target", 2), Map.entry("other", 1));
+    }
+
+    @Test
+    void documentModifiedSinceSnapshotIsParsedAgain()
+    {
+        var cache = newCache();
+        cache.linkCountsOf(document("a", "[[target]]"));
+        cache.writeSnapshot();
+        var restored = newCache();
+        var modified = newDocument("a", LAST_MODIFIED + 1, List.of("[[other]]"));
+        assertThat(restored.linkCountsOf(modified)).containsExactly(Map.entry("other", 1));
+    }
+
+    @Test
+    void documentsNotAskedForAreNotWrittenBack()
+    {
+        var cache = newCache();
+        cache.linkCountsOf(document("a", "[[target]]"));
+        cache.linkCountsOf(document("b", "[[target]]"));
+        cache.writeSnapshot();
+        var restored = newCache();
+        restored.linkCountsOf(document("a", ""));
+        restored.writeSnapshot();
+        var next = newCache();
+        assertThat(next.linkCountsOf(document("a", ""))).containsOnlyKeys("target");
+        assertThat(next.linkCountsOf(document("b", ""))).isEmpty();
+    }
+
+    @Test
+    void truncatedSnapshotIsIgnored()
+        throws IOException
+    {
+        try (var output = new DataOutputStream(Files.newOutputStream(snapshotPath())))
+        {
+            output.writeInt(1);
+            output.writeInt(5);
+            output.writeUTF("a");
+        }
+        var cache = newCache();
+        assertThat(cache.linkCountsOf(document("a", "[[target]]")))
+            .containsExactly(Map.entry("target", 1));
+    }
+
+    @Test
+    void corruptSnapshotIsIgnored()
+        throws IOException
+    {
+        Files.write(snapshotPath(), new byte[]{0, 0, 0, 1, 0x7f, 0x7f, 0x7f, 0x7f, 0, 3, 'a'});
+        var cache = newCache();
+        assertThat(cache.linkCountsOf(document("a", "[[target]]")))
+            .containsExactly(Map.entry("target", 1));
+    }
+
+    @Test
+    void snapshotInAnotherFormatIsIgnored()
+        throws IOException
+    {
+        try (var output = new DataOutputStream(Files.newOutputStream(snapshotPath())))
+        {
+            output.writeInt(Integer.MAX_VALUE);
+        }
+        var cache = newCache();
+        assertThat(cache.linkCountsOf(document("a", "[[target]]")))
+            .containsExactly(Map.entry("target", 1));
+    }
+
+    @Test
+    void snapshotIsWrittenToMissingFolder()
+    {
+        var path = folder.resolve("cache").resolve("links.bin");
+        var cache = new InternalLinkCache(path, _ -> {});
+        cache.linkCountsOf(document("a", "[[target]]"));
+        cache.writeSnapshot();
+        assertThat(path).isRegularFile();
+        assertThat(path.resolveSibling("links.bin.tmp")).doesNotExist();
+    }
+
+    private InternalLinkCache newCache()
+    {
+        return new InternalLinkCache(snapshotPath(), _ -> {});
+    }
+
+    private Path snapshotPath()
+    {
+        return folder.resolve("links.bin");
+    }
+
+    private static Document document(String name, String content)
+    {
+        return newDocument(name, LAST_MODIFIED, List.of(content));
+    }
+}
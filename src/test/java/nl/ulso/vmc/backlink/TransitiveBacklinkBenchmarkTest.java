@@ -0,0 +1,92 @@
+package nl.ulso.vmc.backlink;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+
+import java.util.*;
+
+import static nl.ulso.vmc.backlink.DefaultLinkRepository.documentsLinkingTo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/// Measures the latency of the search for transitive backlinks at depth 2 and 3, on a vault of
+/// 10,000 documents that each link to 10 others, with and without the visit budget the query uses
+/// by default.
+///
+/// Timings depend on the machine, so this benchmark only runs on request:
+/// `mvn test -Dtest=TransitiveBacklinkBenchmarkTest -Dbenchmark=true`.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TransitiveBacklinkBenchmarkTest
+{
+    private static final Logger LOGGER = getLogger(TransitiveBacklinkBenchmarkTest.class);
+    private static final int DOCUMENT_COUNT = 10_000;
+    private static final int LINKS_PER_DOCUMENT = 10;
+    private static final int MAXIMUM_VISITS = 1_001;
+    private static final int WARMUP_ITERATIONS = 1_000;
+    private static final int ITERATIONS = 1_000;
+    private static final long MAXIMUM_AVERAGE_NANOS = 10_000_000;
+
+    @Test
+    void depth2()
+    {
+        assertThat(measure(2, MAXIMUM_VISITS)).isLessThan(MAXIMUM_AVERAGE_NANOS);
+        measure(2, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void depth3()
+    {
+        assertThat(measure(3, MAXIMUM_VISITS)).isLessThan(MAXIMUM_AVERAGE_NANOS);
+        measure(3, Integer.MAX_VALUE);
+    }
+
+    private static long measure(int depth, int maximumVisits)
+    {
+        var incomingLinks = vault();
+        var random = new Random(42);
+        var found = 0L;
+        for (var i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            found += search(incomingLinks, random, depth, maximumVisits);
+        }
+        var start = System.nanoTime();
+        for (var i = 0; i < ITERATIONS; i++)
+        {
+            found += search(incomingLinks, random, depth, maximumVisits);
+        }
+        var average = (System.nanoTime() - start) / ITERATIONS;
+        LOGGER.info("Depth {}, at most {} visits: {} µs per search ({} documents found in total).",
+            depth, maximumVisits, average / 1_000, found);
+        return average;
+    }
+
+    private static int search(
+        Map<String, Set<String>> incomingLinks, Random random, int depth, int maximumVisits)
+    {
+        var groups = documentsLinkingTo(
+            incomingLinks, nameOf(random.nextInt(DOCUMENT_COUNT)), depth, maximumVisits);
+        return groups.stream().mapToInt(List::size).sum();
+    }
+
+    private static Map<String, Set<String>> vault()
+    {
+        var random = new Random(1);
+        var incomingLinks = new HashMap<String, Set<String>>();
+        for (var source = 0; source < DOCUMENT_COUNT; source++)
+        {
+            for (var i = 0; i < LINKS_PER_DOCUMENT; i++)
+            {
+                var target = random.nextInt(DOCUMENT_COUNT);
+                incomingLinks.computeIfAbsent(nameOf(target), _ -> new HashSet<>())
+                    .add(nameOf(source));
+            }
+        }
+        return incomingLinks;
+    }
+
+    private static String nameOf(int document)
+    {
+        return "Document " + document;
+    }
+}
@@ -0,0 +1,52 @@
+package nl.ulso.vmc.bilateral;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static nl.ulso.vmc.bilateral.BilateralMeetingQuery.isSelected;
+import static nl.ulso.vmc.bilateral.BilateralMeetingRepository.FALLBACK_NEVER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BilateralMeetingQueryTest
+{
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 17);
+
+    @Test
+    void neverMetIsListedWithoutFilterOnly()
+    {
+        var meeting = meetingOn(FALLBACK_NEVER);
+        assertThat(isSelected(meeting, "all", TODAY)).isTrue();
+        assertThat(isSelected(meeting, "due", TODAY)).isFalse();
+        assertThat(isSelected(meeting, "overdue", TODAY)).isFalse();
+    }
+
+    @Test
+    void recentMeetingIsNeitherDueNorOverdue()
+    {
+        var meeting = meetingOn(TODAY.minusDays(2));
+        assertThat(isSelected(meeting, "due", TODAY)).isFalse();
+        assertThat(isSelected(meeting, "overdue", TODAY)).isFalse();
+    }
+
+    @Test
+    void meetingWithinAWeekOfRecurrenceIsDue()
+    {
+        var meeting = meetingOn(TODAY.minusDays(10));
+        assertThat(isSelected(meeting, "due", TODAY)).isTrue();
+        assertThat(isSelected(meeting, "overdue", TODAY)).isFalse();
+    }
+
+    @Test
+    void meetingBeyondRecurrenceIsDueAndOverdue()
+    {
+        var meeting = meetingOn(TODAY.minusDays(15));
+        assertThat(isSelected(meeting, "due", TODAY)).isTrue();
+        assertThat(isSelected(meeting, "overdue", TODAY)).isTrue();
+    }
+
+    private static BilateralMeeting meetingOn(LocalDate date)
+    {
+        return new BilateralMeeting(new Counterpart(null, 14), date);
+    }
+}
@@ -0,0 +1,91 @@
+package nl.ulso.vmc.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static nl.ulso.vmc.graph.EdgeDates.NO_DATES;
+import static nl.ulso.vmc.graph.EdgeDates.countBetween;
+import static nl.ulso.vmc.graph.EdgeDates.dateOf;
+import static nl.ulso.vmc.graph.EdgeDates.epochDayOf;
+import static nl.ulso.vmc.graph.EdgeDates.hasDateBetween;
+import static nl.ulso.vmc.graph.EdgeDates.withDate;
+import static nl.ulso.vmc.graph.EdgeDates.withoutDate;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EdgeDatesTest
+{
+    private static final LocalDate MONDAY = LocalDate.of(2026, 10, 12);
+    private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+    private static final LocalDate WEDNESDAY = MONDAY.plusDays(2);
+
+    @Test
+    void datesAreKeptSorted()
+    {
+        var dates = withDate(withDate(withDate(NO_DATES, WEDNESDAY), MONDAY), TUESDAY);
+        assertThat(dates).containsExactly(
+            epochDayOf(MONDAY), epochDayOf(TUESDAY), epochDayOf(WEDNESDAY));
+    }
+
+    @Test
+    void addingKnownDateReturnsSameArray()
+    {
+        var dates = withDate(NO_DATES, MONDAY);
+        assertThat(withDate(dates, MONDAY)).isSameAs(dates);
+    }
+
+    @Test
+    void addingDateDoesNotChangeOriginal()
+    {
+        var dates = withDate(NO_DATES, MONDAY);
+        withDate(dates, TUESDAY);
+        assertThat(dates).containsExactly(epochDayOf(MONDAY));
+    }
+
+    @Test
+    void removingUnknownDateReturnsSameArray()
+    {
+        var dates = withDate(NO_DATES, MONDAY);
+        assertThat(withoutDate(dates, TUESDAY)).isSameAs(dates);
+    }
+
+    @Test
+    void removingLastDateReturnsNoDates()
+    {
+        assertThat(withoutDate(withDate(NO_DATES, MONDAY), MONDAY)).isSameAs(NO_DATES);
+    }
+
+    @Test
+    void removingDateKeepsOthersSorted()
+    {
+        var dates = withDate(withDate(withDate(NO_DATES, MONDAY), TUESDAY), WEDNESDAY);
+        assertThat(withoutDate(dates, TUESDAY))
+            .containsExactly(epochDayOf(MONDAY), epochDayOf(WEDNESDAY));
+    }
+
+    @Test
+    void rangesIncludeTheirBounds()
+    {
+        var dates = withDate(withDate(NO_DATES, MONDAY), WEDNESDAY);
+        assertThat(hasDateBetween(dates, epochDayOf(MONDAY), epochDayOf(MONDAY))).isTrue();
+        assertThat(hasDateBetween(dates, epochDayOf(TUESDAY), epochDayOf(TUESDAY))).isFalse();
+        assertThat(hasDateBetween(dates, epochDayOf(TUESDAY), epochDayOf(WEDNESDAY))).isTrue();
+        assertThat(countBetween(dates, epochDayOf(MONDAY), epochDayOf(WEDNESDAY))).isEqualTo(2);
+        assertThat(countBetween(dates, epochDayOf(TUESDAY), epochDayOf(WEDNESDAY))).isEqualTo(1);
+    }
+
+    @Test
+    void openRangesCoverAllDates()
+    {
+        var dates = withDate(withDate(NO_DATES, MONDAY), WEDNESDAY);
+        assertThat(hasDateBetween(dates, Integer.MIN_VALUE, Integer.MAX_VALUE)).isTrue();
+        assertThat(countBetween(dates, Integer.MIN_VALUE, Integer.MAX_VALUE)).isEqualTo(2);
+        assertThat(countBetween(dates, epochDayOf(WEDNESDAY), epochDayOf(MONDAY))).isZero();
+    }
+
+    @Test
+    void epochDaysConvertBackToDates()
+    {
+        assertThat(dateOf(epochDayOf(TUESDAY))).isEqualTo(TUESDAY);
+    }
+}
@@ -0,0 +1,178 @@
+package nl.ulso.vmc.graph;
+
+import nl.ulso.curator.vault.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+
+import java.lang.ref.Reference;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static nl.ulso.curator.vault.Document.newDocument;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/// Compares the heap used by the graph as it is stored now - a [NodeTable] of [Node]s with edges
+/// as sorted arrays of node indexes and [EdgeDates] - with the heap used by the graph as it was
+/// stored before: a `TreeMap` of edges per node, each with a `HashSet` of dates.
+///
+/// The graph is built from years of simulated journal history: every day the journal links a
+/// number of documents to each other, with some documents showing up far more often than others.
+/// The documents themselves are created up front, so that only the graph is measured.
+///
+/// The graph has to fit in the heap the `vmc` launcher gives the application, together with the
+/// vault itself. The numbers depend on the JVM and garbage collector, so this benchmark only runs
+/// on request: `mvn test -Dtest=EdgeMemoryBenchmarkTest -Dbenchmark=true`.
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class EdgeMemoryBenchmarkTest
+{
+    private static final Logger LOGGER = getLogger(EdgeMemoryBenchmarkTest.class);
+    private static final long HEAP_BUDGET = 128L * 1024 * 1024;
+    private static final int DOCUMENT_COUNT = 5_000;
+    private static final int FREQUENT_DOCUMENT_COUNT = 250;
+    private static final int YEARS = 10;
+    private static final int EDGES_PER_DAY = 25;
+    private static final LocalDate START = LocalDate.of(2016, 1, 1);
+
+    private final List<Document> documents = createDocuments();
+    private final List<JournalEdge> history = createHistory();
+    private final Type type = new Type("Document", "Documents", Shape.ROUNDED_RECTANGLE);
+
+    @Test
+    void graphFitsTheHeapBudget()
+    {
+        var baselineBytes = usedBytesOf(this::baselineGraph);
+        var graphBytes = usedBytesOf(this::graph);
+        LOGGER.info("{} edge dates over {} years between {} documents",
+            history.size(), YEARS, DOCUMENT_COUNT);
+        LOGGER.info("Baseline: {} KB; now: {} KB, {}% of the {} MB heap budget",
+            baselineBytes / 1024, graphBytes / 1024, graphBytes * 100 / HEAP_BUDGET,
+            HEAP_BUDGET / 1024 / 1024);
+        assertThat(graphBytes).isLessThan(baselineBytes);
+        assertThat(graphBytes).isLessThan(HEAP_BUDGET);
+    }
+
+    private List<Node> graph()
+    {
+        var table = new NodeTable();
+        var nodes = new ArrayList<Node>(DOCUMENT_COUNT);
+        documents.forEach(document -> nodes.add(table.newNode(document, type, false)));
+        history.forEach(edge -> nodes.get(edge.source()).addEdge(nodes.get(edge.target()),
+            edge.date()));
+        return nodes;
+    }
+
+    private List<BaselineNode> baselineGraph()
+    {
+        var nodes = new ArrayList<BaselineNode>(DOCUMENT_COUNT);
+        documents.forEach(document -> nodes.add(new BaselineNode(document)));
+        history.forEach(edge -> {
+            var source = nodes.get(edge.source());
+            var target = nodes.get(edge.target());
+            source.addEdge(target, edge.date());
+            target.addEdge(source, edge.date());
+        });
+        return nodes;
+    }
+
+    private static List<Document> createDocuments()
+    {
+        var documents = new ArrayList<Document>(DOCUMENT_COUNT);
+        for (var i = 0; i < DOCUMENT_COUNT; i++)
+        {
+            documents.add(newDocument("Document " + i, 0L, List.of()));
+        }
+        return documents;
+    }
+
+    /// Half of the links in the journal go to a small set of frequent documents, like the people
+    /// met with most and the projects that run for years. Those edges collect many dates.
+    private static List<JournalEdge> createHistory()
+    {
+        var random = new Random(42);
+        var days = (int) (START.plusYears(YEARS).toEpochDay() - START.toEpochDay());
+        var history = new ArrayList<JournalEdge>(days * EDGES_PER_DAY);
+        for (var day = 0; day < days; day++)
+        {
+            var date = START.plusDays(day);
+            for (var i = 0; i < EDGES_PER_DAY; i++)
+            {
+                var source = random.nextInt(DOCUMENT_COUNT);
+                var target = random.nextBoolean()
+                             ? random.nextInt(FREQUENT_DOCUMENT_COUNT)
+                             : random.nextInt(DOCUMENT_COUNT);
+                if (source != target)
+                {
+                    history.add(new JournalEdge(source, target, date));
+                }
+            }
+        }
+        return history;
+    }
+
+    private static long usedBytesOf(Supplier<?> supplier)
+    {
+        var before = usedBytes();
+        var result = supplier.get();
+        var after = usedBytes();
+        Reference.reachabilityFence(result);
+        return after - before;
+    }
+
+    private static long usedBytes()
+    {
+        var runtime = Runtime.getRuntime();
+        for (var i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private record JournalEdge(int source, int target, LocalDate date) {}
+
+    /// The node as the graph used to store it, with the same edge on both nodes, and the dates of
+    /// each edge in an object of their own.
+    private static final class BaselineNode
+        implements Comparable<BaselineNode>
+    {
+        private final Document document;
+        private final Map<BaselineNode, BaselineEdgeData> edges;
+
+        BaselineNode(Document document)
+        {
+            this.document = document;
+            this.edges = new TreeMap<>();
+        }
+
+        void addEdge(BaselineNode targetNode, LocalDate date)
+        {
+            edges.computeIfAbsent(targetNode, _ -> new BaselineEdgeData()).dates.add(date);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof BaselineNode node && document.equals(node.document);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return document.hashCode();
+        }
+
+        @Override
+        public int compareTo(BaselineNode node)
+        {
+            return document.sortableTitle().compareTo(node.document.sortableTitle());
+        }
+    }
+
+    private static final class BaselineEdgeData
+    {
+        private final Set<LocalDate> dates = new HashSet<>();
+    }
+}
@@ -0,0 +1,62 @@
+package nl.ulso.vmc.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenderedGraphCacheTest
+{
+    @Test
+    void invalidatingNodeRemovesGraphsThatVisitedIt()
+    {
+        var cache = new RenderedGraphCache();
+        cache.put(request("a"), "graph a", Set.of("a", "b"));
+        cache.put(request("c"), "graph c", Set.of("c"));
+        cache.invalidate("b");
+        assertThat(cache.contains(request("a"))).isFalse();
+        assertThat(cache.get(request("c"))).isEqualTo("graph c");
+    }
+
+    @Test
+    void invalidatedRequestsAreKeptUntilTaken()
+    {
+        var cache = new RenderedGraphCache();
+        cache.put(request("a"), "graph a", Set.of("a", "b"));
+        cache.put(request("c"), "graph c", Set.of("c"));
+        cache.invalidate("b");
+        cache.put(request("a"), "graph a", Set.of("a", "b"));
+        assertThat(cache.takeInvalidatedRequests()).containsExactly(request("a"));
+        assertThat(cache.takeInvalidatedRequests()).isEmpty();
+    }
+
+    @Test
+    void leastRecentlyUsedGraphIsEvictedWhenFull()
+    {
+        var cache = new RenderedGraphCache(2);
+        cache.put(request("a"), "graph a", Set.of("a"));
+        cache.put(request("b"), "graph b", Set.of("b"));
+        cache.get(request("a"));
+        cache.put(request("c"), "graph c", Set.of("c"));
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.contains(request("a"))).isTrue();
+        assertThat(cache.contains(request("b"))).isFalse();
+        assertThat(cache.contains(request("c"))).isTrue();
+    }
+
+    @Test
+    void evictedGraphIsNoLongerIndexedByNode()
+    {
+        var cache = new RenderedGraphCache(1);
+        cache.put(request("a"), "graph a", Set.of("shared"));
+        cache.put(request("b"), "graph b", Set.of("shared"));
+        cache.invalidate("shared");
+        assertThat(cache.size()).isZero();
+    }
+
+    private static GraphRequest request(String seedDocumentName)
+    {
+        return new GraphRequest(seedDocumentName, 2, Set.of(), 100, 250, null, null, 10);
+    }
+}